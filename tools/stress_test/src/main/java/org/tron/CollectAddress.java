@@ -15,10 +15,11 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import org.rocksdb.RocksDBException;
 import org.tron.plugins.utils.db.DBInterface;
-import org.tron.plugins.utils.db.DBIterator;
 import org.tron.plugins.utils.db.DbTool;
 import org.tron.protos.contract.BalanceContract.TransferContract;
 import org.tron.trident.core.ApiWrapper;
@@ -128,31 +129,29 @@ public class CollectAddress implements Callable<Integer> {
 
   private Set<ByteString> getAddressListFromDB(String dbPath, int totalNumber)
       throws IOException, RocksDBException {
-    Set<ByteString> addressList = new HashSet<>();
+    Set<ByteString> addressList = ConcurrentHashMap.newKeySet();
+    AtomicInteger collected = new AtomicInteger();
     String srcDir = dbPath + File.separator + "database";
     DBInterface accountStore = DbTool.getDB(srcDir, ACCOUNT_STORE);
-    DBIterator iterator = accountStore.iterator();
-    for (iterator.seekToFirst(); iterator.valid(); iterator.next()) {
-      addressList.add(ByteString.copyFrom(iterator.getKey()));
-      if (addressList.size() % 10000 == 0) {
-        logger.info("collecting address list, current size: {}, target: {}", addressList.size(),
-            totalNumber);
-        spec.commandLine().getOut()
-            .format("collecting address list, current size: %d, target: %d", addressList.size(),
-                totalNumber)
-            .println();
-      }
-      if (addressList.size() >= totalNumber) {
-        logger
-            .info("collecting address list: {}, target: {}", addressList.size(),
-                totalNumber);
-        spec.commandLine().getOut()
-            .format("collecting address list: %d, target: %d",
-                addressList.size(), totalNumber)
-            .println();
-        return addressList;
+    // collect the key ranges of the account store in parallel
+    DbTool.scan(accountStore, (range, iterator) -> {
+      for (; iterator.valid(); iterator.next()) {
+        int count = collected.incrementAndGet();
+        if (count > totalNumber) {
+          break;
+        }
+        addressList.add(ByteString.copyFrom(iterator.getKey()));
+        if (count % 10000 == 0) {
+          logger.info("collecting address list, current size: {}, target: {}", count,
+              totalNumber);
+          spec.commandLine().getOut()
+              .format("collecting address list, current size: %d, target: %d", count,
+                  totalNumber)
+              .println();
+        }
       }
-    }
+      return null;
+    });
 
     logger
         .info("collecting address list: {}, target: {}", addressList.size(),
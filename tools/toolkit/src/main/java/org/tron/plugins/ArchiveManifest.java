@@ -3,63 +3,66 @@ package org.tron.plugins;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import com.sun.management.UnixOperatingSystemMXBean;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
-import java.util.Properties;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.iq80.leveldb.CompressionType;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.Options;
 import org.iq80.leveldb.impl.Filename;
+import org.tron.plugins.utils.DBUtils;
+import org.tron.plugins.utils.FileUtils;
 import picocli.CommandLine;
 import picocli.CommandLine.Option;
 
 @Slf4j(topic = "archive")
 /*
-  a helper to rewrite leveldb manifest.
+  a helper to rewrite leveldb manifest, the engine of db archive.
+  The MANIFEST of every store is measured first, the stores to archive are reopened largest
+  MANIFEST first, as many at a time as the memory and file handle budgets hold.
  */
 public class ArchiveManifest implements Callable<Boolean> {
 
-
-  private static final String KEY_ENGINE = "ENGINE";
-  private static final String LEVELDB = "LEVELDB";
+  // LOCK, LOG, CURRENT, MANIFEST and the write ahead log
+  private static final int FIXED_FILES = 5;
 
   private final Path srcDbPath;
   private final String name;
   private final Options options;
-  private final long startTime;
-
+  @Getter
+  private long manifestSize = -1;
+  @Getter
+  private long newManifestSize = -1;
+  private int tableFiles;
+  // the archiving open replays the MANIFEST and writes the new one, the reopen only replays
+  // the new one, so the difference is an upper bound of the startup time saved
+  @Getter
+  private long archiveOpenMillis;
+  @Getter
+  private long reopenMillis;
 
   private static final int CPUS  = Runtime.getRuntime().availableProcessors();
 
   public ArchiveManifest(String src, String name, int maxManifestSize, int maxBatchSize) {
     this.name = name;
     this.srcDbPath = Paths.get(src, name);
-    this.startTime = System.currentTimeMillis();
     this.options = newDefaultLevelDbOptions();
     this.options.maxManifestSize(maxManifestSize);
     this.options.maxBatchSize(maxBatchSize);
@@ -111,51 +114,100 @@ public class ArchiveManifest implements Callable<Boolean> {
       logger.info("{} is not directory.", parameters.databaseDirectory);
       return 405;
     }
+    Report report = archive(parameters.databaseDirectory, parameters.maxManifestSize,
+        parameters.maxBatchSize, parameters.memoryBudget, parameters.fileBudget);
+    if (report.getFails() > 0) {
+      logger.error("Failed!!!!!!!!!!!!!!!!!!!!!!!! size:{}", report.getFails());
+    }
+    return report.getFails();
+  }
 
-    List<File> files = Arrays.stream(Objects.requireNonNull(dbDirectory.listFiles()))
-        .filter(File::isDirectory).collect(
-            Collectors.toList());
-
+  /**
+   * Archive the manifests of all stores of a database dir.
+   * The MANIFEST size of each store is its replay cost, the stores to archive are reopened
+   * largest first, the longest replays start early, so they do not end the run alone.
+   * A store is started when the stores being reopened leave room for its estimated memory
+   * and file handles in the budgets, a store larger than a budget is reopened alone.
+   *
+   * @param databaseDirectory java-tron database dir
+   * @param maxManifestSize manifest min size(M) to archive
+   * @param maxBatchSize manifest batch size
+   * @param memoryBudget memory(M) of the reopens at a time, 0 for half of the max heap
+   * @param fileBudget file handles of the reopens at a time, 0 for half of the process limit
+   * @return the stores archived, the failed ones and the archive open and reopen times
+   */
+  public static Report archive(String databaseDirectory, int maxManifestSize, int maxBatchSize,
+                               long memoryBudget, long fileBudget) {
+    final long time = System.currentTimeMillis();
+    List<File> files = Arrays.stream(Objects.requireNonNull(
+        new File(databaseDirectory).listFiles())).filter(File::isDirectory)
+        .collect(Collectors.toList());
+    Report report = new Report();
     if (files.isEmpty()) {
-      logger.info("Directory {} does not contain any database.", parameters.databaseDirectory);
-      return 0;
+      logger.info("Directory {} does not contain any database.", databaseDirectory);
+      return report;
     }
-    final long time = System.currentTimeMillis();
-    final List<Future<Boolean>> res = new ArrayList<>();
-    final ThreadPoolExecutor executor = new ThreadPoolExecutor(
-        CPUS, 16 * CPUS, 1, TimeUnit.MINUTES,
-        new ArrayBlockingQueue<>(CPUS, true), Executors.defaultThreadFactory(),
-        new ThreadPoolExecutor.CallerRunsPolicy());
-
-    executor.allowCoreThreadTimeOut(true);
-
-    files.forEach(f -> res.add(
-        executor.submit(new ArchiveManifest(parameters.databaseDirectory, f.getName(),
-            parameters.maxManifestSize, parameters.maxBatchSize))));
-    int fails = res.size();
-
-    for (Future<Boolean> re : res) {
+    List<ArchiveManifest> stores = new ArrayList<>();
+    for (File f : files) {
+      ArchiveManifest store = new ArchiveManifest(databaseDirectory, f.getName(),
+          maxManifestSize, maxBatchSize);
       try {
-        if (Boolean.TRUE.equals(re.get())) {
-          fails--;
+        if (store.measure()) {
+          stores.add(store);
+        }
+      } catch (IOException e) {
+        logger.error("Db {} measure failed.", f.getName(), e);
+        report.fails++;
+      }
+    }
+    stores.sort(Comparator.comparingLong(ArchiveManifest::getManifestSize).reversed());
+    Budget budget = new Budget(
+        memoryBudget > 0 ? memoryBudget * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 2,
+        fileBudget > 0 ? fileBudget : maxFiles() / 2, CPUS);
+    logger.info("Archive {} dbs, largest manifest first, {}.", stores.size(), budget);
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+        Math.min(CPUS, stores.size())));
+    List<Future<Boolean>> res = new ArrayList<>();
+    try {
+      for (ArchiveManifest store : stores) {
+        long memory = store.memoryCost();
+        long handles = store.fileCost();
+        budget.acquire(memory, handles);
+        res.add(executor.submit(() -> {
+          try {
+            return store.doArchive();
+          } finally {
+            budget.release(memory, handles);
+          }
+        }));
+      }
+    } catch (InterruptedException e) {
+      logger.error("{}", e);
+      Thread.currentThread().interrupt();
+    }
+    report.fails += stores.size() - res.size();
+    for (int i = 0; i < res.size(); i++) {
+      try {
+        if (Boolean.TRUE.equals(res.get(i).get())) {
+          report.add(stores.get(i));
+        } else {
+          report.fails++;
         }
       } catch (InterruptedException e) {
         logger.error("{}", e);
+        report.fails++;
         Thread.currentThread().interrupt();
       } catch (ExecutionException e) {
         logger.error("{}", e);
+        report.fails++;
       }
     }
-
     executor.shutdown();
     logger.info("DatabaseDirectory:{}, maxManifestSize:{}, maxBatchSize:{},"
-            + "database reopen use {} seconds total.",
-        parameters.databaseDirectory, parameters.maxManifestSize, parameters.maxBatchSize,
-        (System.currentTimeMillis() - time) / 1000);
-    if (fails > 0) {
-      logger.error("Failed!!!!!!!!!!!!!!!!!!!!!!!! size:{}", fails);
-    }
-    return fails;
+            + "database reopen use {} seconds total, {}.",
+        databaseDirectory, maxManifestSize, maxBatchSize,
+        (System.currentTimeMillis() - time) / 1000, report);
+    return report;
   }
 
   public void open() throws IOException {
@@ -163,89 +215,189 @@ public class ArchiveManifest implements Callable<Boolean> {
     database.close();
   }
 
-  public boolean checkManifest(String dir) throws IOException {
-    // Read "CURRENT" file, which contains a pointer to the current manifest file
-    File currentFile = new File(dir, Filename.currentFileName());
-    if (!currentFile.exists()) {
+  /**
+   * Measure the MANIFEST and the table files of the store.
+   *
+   * @return true if the store needs archive
+   */
+  boolean measure() throws IOException {
+    File levelDbFile = srcDbPath.toFile();
+    if (!levelDbFile.exists()) {
+      logger.info("File {},does not exist, ignored.", srcDbPath.toString());
       return false;
     }
-    String currentName = com.google.common.io.Files.asCharSource(currentFile, UTF_8).read();
-    if (currentName.isEmpty() || currentName.charAt(currentName.length() - 1) != '\n') {
+    if (!checkManifest(levelDbFile.toString())) {
+      logger.info("Db {},no need, ignored.", levelDbFile.toString());
       return false;
     }
-    currentName = currentName.substring(0, currentName.length() - 1);
-    File current = new File(dir, currentName);
-    if (!current.isFile()) {
+    if (!checkEngine()) {
+      logger.info("Db {},not leveldb, ignored.", this.name);
+      return false;
+    }
+    String[] tables = levelDbFile.list((dir, file) -> file.endsWith(".ldb")
+        || file.endsWith(".sst"));
+    tableFiles = tables == null ? 0 : tables.length;
+    return true;
+  }
+
+  /**
+   * Estimated memory of a reopen, the write buffer and block cache of the db and the
+   * replayed manifest.
+   */
+  long memoryCost() {
+    return options.writeBufferSize() + options.cacheSize() + Math.max(0, manifestSize);
+  }
+
+  /**
+   * Estimated file handles of a reopen, the table cache holds at most max open files.
+   */
+  long fileCost() {
+    return Math.min(tableFiles, options.maxOpenFiles()) + FIXED_FILES;
+  }
+
+  public boolean checkManifest(String dir) throws IOException {
+    File current = currentManifest(dir);
+    if (current == null) {
       return false;
     }
     long maxSize = options.maxManifestSize();
     if (maxSize < 0) {
       return false;
     }
-    logger.info("CurrentName {}/{},size {} kb.", dir, currentName, current.length() / 1024);
-    if ("market_pair_price_to_order".equalsIgnoreCase(this.name)) {
+    manifestSize = current.length();
+    logger.info("CurrentName {}/{},size {} kb.", dir, current.getName(),
+        current.length() / 1024);
+    if (DBUtils.MARKET_PAIR_PRICE_TO_ORDER.equalsIgnoreCase(this.name)) {
       logger.info("Db {} ignored.", this.name);
       return false;
     }
     return current.length() >= maxSize * 1024 * 1024;
   }
 
-  public boolean doArchive() throws IOException {
-    File levelDbFile = srcDbPath.toFile();
-    if (!levelDbFile.exists()) {
-      logger.info("File {},does not exist, ignored.", srcDbPath.toString());
-      return true;
+  private static File currentManifest(String dir) throws IOException {
+    // Read "CURRENT" file, which contains a pointer to the current manifest file
+    File currentFile = new File(dir, Filename.currentFileName());
+    if (!currentFile.exists()) {
+      return null;
     }
-    if (!checkManifest(levelDbFile.toString())) {
-      logger.info("Db {},no need, ignored.", levelDbFile.toString());
-      return true;
+    String currentName = com.google.common.io.Files.asCharSource(currentFile, UTF_8).read();
+    if (currentName.isEmpty() || currentName.charAt(currentName.length() - 1) != '\n') {
+      return null;
     }
-    if (!checkEngine()) {
-      logger.info("Db {},not leveldb, ignored.", this.name);
+    currentName = currentName.substring(0, currentName.length() - 1);
+    File current = new File(dir, currentName);
+    return current.isFile() ? current : null;
+  }
+
+  public boolean doArchive() throws IOException {
+    if (manifestSize < 0 && !measure()) {
       return true;
     }
+    final long startTime = System.currentTimeMillis();
+    long start = startTime;
     open();
-    logger.info("Db {} archive use {} ms.", this.name, (System.currentTimeMillis() - startTime));
+    archiveOpenMillis = System.currentTimeMillis() - start;
+    // the replay a node pays on startup now
+    start = System.currentTimeMillis();
+    open();
+    reopenMillis = System.currentTimeMillis() - start;
+    File current = currentManifest(srcDbPath.toString());
+    newManifestSize = current == null ? -1 : current.length();
+    logger.info("Db {} archive use {} ms, manifest {} kb -> {} kb, archive open {} ms"
+        + " vs. reopen {} ms.", this.name, (System.currentTimeMillis() - startTime),
+        manifestSize / 1024, newManifestSize / 1024, archiveOpenMillis, reopenMillis);
     return true;
   }
 
   public boolean checkEngine() {
-    String dir = this.srcDbPath.toString();
-    String enginePath = dir + File.separator + "engine.properties";
-    if (!new File(enginePath).exists() && !writeProperty(enginePath, KEY_ENGINE, LEVELDB)) {
-      return false;
+    return FileUtils.isLevelDBEngine(srcDbPath);
+  }
+
+  private static long maxFiles() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof UnixOperatingSystemMXBean) {
+      return ((UnixOperatingSystemMXBean) os).getMaxFileDescriptorCount();
     }
-    String engine = readProperty(enginePath, KEY_ENGINE);
-    return LEVELDB.equals(engine);
+    return 8192;
   }
 
-  public static String readProperty(String file, String key) {
-    try (FileInputStream fileInputStream = new FileInputStream(file);
-         InputStream inputStream = new BufferedInputStream(fileInputStream)) {
-      Properties prop = new Properties();
-      prop.load(inputStream);
-      return new String(prop.getProperty(key, "").getBytes(StandardCharsets.ISO_8859_1),
-          UTF_8);
-    } catch (Exception e) {
-      logger.error("{}", e);
-      return "";
+  /**
+   * Memory and file handles of the reopens running at a time, and the threads.
+   * A reopen waits until the running ones leave room for it, one alone always runs.
+   */
+  private static class Budget {
+    private final long memory;
+    private final long files;
+    private final int threads;
+    private long usedMemory;
+    private long usedFiles;
+    private int running;
+
+    private Budget(long memory, long files, int threads) {
+      this.memory = memory;
+      this.files = files;
+      this.threads = threads;
+    }
+
+    private synchronized void acquire(long needMemory, long needFiles)
+        throws InterruptedException {
+      while (running > 0 && (running >= threads || usedMemory + needMemory > memory
+          || usedFiles + needFiles > files)) {
+        wait();
+      }
+      usedMemory += needMemory;
+      usedFiles += needFiles;
+      running++;
+    }
+
+    private synchronized void release(long needMemory, long needFiles) {
+      usedMemory -= needMemory;
+      usedFiles -= needFiles;
+      running--;
+      notifyAll();
+    }
+
+    @Override
+    public String toString() {
+      return String.format("budget %d MB, %d files, %d threads", memory / 1024 / 1024, files,
+          threads);
     }
   }
 
-  public static boolean writeProperty(String file, String key, String value) {
-    try (OutputStream out = new FileOutputStream(file);
-         FileInputStream fis = new FileInputStream(file);
-         BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out, UTF_8))) {
-      BufferedReader bf = new BufferedReader(new InputStreamReader(fis, UTF_8));
-      Properties properties = new Properties();
-      properties.load(bf);
-      properties.setProperty(key, value);
-      properties.store(bw, "Generated by the application.  PLEASE DO NOT EDIT! ");
-    } catch (Exception e) {
-      logger.warn("{}", e);
-      return false;
+  /**
+   * Summary of an archive run.
+   */
+  public static class Report {
+    @Getter
+    private int archived;
+    @Getter
+    private int fails;
+    @Getter
+    private long manifestBytes;
+    @Getter
+    private long newManifestBytes;
+    @Getter
+    private long archiveOpenMillis;
+    @Getter
+    private long reopenMillis;
+
+    private void add(ArchiveManifest store) {
+      if (store.newManifestSize < 0) {
+        return;
+      }
+      archived++;
+      manifestBytes += store.manifestSize;
+      newManifestBytes += store.newManifestSize;
+      archiveOpenMillis += store.archiveOpenMillis;
+      reopenMillis += store.reopenMillis;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d dbs archived, fails: %d, manifest %d kb -> %d kb,"
+              + " archive open %d ms vs. reopen %d ms", archived, fails,
+          manifestBytes / 1024, newManifestBytes / 1024, archiveOpenMillis, reopenMillis);
     }
-    return true;
   }
 
   public static class Args {
@@ -265,6 +417,18 @@ public class ArchiveManifest implements Callable<Boolean> {
         description = "manifest  min size(M) to archive. Default: ${DEFAULT-VALUE}")
     private  int maxManifestSize;
 
+    @Option(names = {"--memory-budget"},
+        defaultValue = "0",
+        description = "memory(M) of the dbs reopened at a time, 0 for half of the max heap."
+            + " Default: ${DEFAULT-VALUE}")
+    private  long memoryBudget;
+
+    @Option(names = {"--file-budget"},
+        defaultValue = "0",
+        description = "file handles of the dbs reopened at a time, 0 for half of the limit."
+            + " Default: ${DEFAULT-VALUE}")
+    private  long fileBudget;
+
     @Option(names = {"-h", "--help"}, help = true)
     private  boolean help;
   }
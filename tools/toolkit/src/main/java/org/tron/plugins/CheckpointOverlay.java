@@ -0,0 +1,302 @@
+package org.tron.plugins;
+
+import com.google.common.collect.Maps;
+import com.google.common.primitives.UnsignedBytes;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DBIterator;
+
+/**
+ * The latest checkpoint held in memory, as sorted key and value arrays per store,
+ * so reads of a checkpointed source hit memory first and only fall back to the base store
+ * on a miss. Deleted keys are kept as null values to hide the base entries.
+ * Merged iterators assume the base store is ordered bytewise, as all stores but
+ * market_pair_price_to_order are.
+ */
+@Slf4j(topic = "lite")
+class CheckpointOverlay {
+
+  private static final int PREFIX_LENGTH = 4;
+  private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+  private final Map<String, Store> stores;
+
+  private CheckpointOverlay(Map<String, Store> stores) {
+    this.stores = stores;
+  }
+
+  /**
+   * Load a checkpoint, keys of one store are adjacent and sorted in the checkpoint,
+   * so each store is built by appending.
+   *
+   * @param checkpoint checkpoint db
+   * @return the overlay
+   */
+  static CheckpointOverlay load(DBInterface checkpoint) throws IOException {
+    Map<String, Store.Builder> builders = new HashMap<>();
+    byte[] name = null;
+    Store.Builder builder = null;
+    long count = 0;
+    try (DBIterator iterator = checkpoint.iterator()) {
+      for (iterator.seekToFirst(); iterator.hasNext(); iterator.next()) {
+        byte[] key = iterator.getKey();
+        byte[] value = iterator.getValue();
+        if (key.length < PREFIX_LENGTH || value == null || value.length == 0) {
+          continue;
+        }
+        int length = (key[0] & 0xff) << 24 | (key[1] & 0xff) << 16
+            | (key[2] & 0xff) << 8 | (key[3] & 0xff);
+        if (length < 0 || key.length < PREFIX_LENGTH + length) {
+          continue;
+        }
+        // decode the store name only when the store changes
+        if (name == null || !nameEquals(name, key, length)) {
+          name = Arrays.copyOfRange(key, PREFIX_LENGTH, PREFIX_LENGTH + length);
+          builder = builders.computeIfAbsent(new String(name, StandardCharsets.UTF_8),
+              k -> new Store.Builder());
+        }
+        builder.add(Arrays.copyOfRange(key, PREFIX_LENGTH + length, key.length),
+            value.length == 1 ? null : Arrays.copyOfRange(value, 1, value.length));
+        count++;
+      }
+    }
+    Map<String, Store> stores = new HashMap<>(builders.size());
+    builders.forEach((k, v) -> stores.put(k, v.build()));
+    logger.info("Load checkpoint {} with {} keys of {} stores.", checkpoint.getName(), count,
+        stores.size());
+    return new CheckpointOverlay(stores);
+  }
+
+  /**
+   * Read a key through the overlay.
+   *
+   * @param dbName store name
+   * @param base base store
+   * @param key key
+   * @return the value, null if deleted in the overlay or not found
+   */
+  byte[] get(String dbName, DBInterface base, byte[] key) {
+    Store store = stores.get(dbName);
+    int index = store == null ? -1 : store.indexOf(key);
+    return index < 0 ? base.get(key) : store.values[index];
+  }
+
+  /**
+   * Iterate the base store merged with the overlay, the overlay wins on equal keys.
+   *
+   * @param dbName store name
+   * @param base base store
+   * @return merged iterator
+   */
+  DBIterator iterator(String dbName, DBInterface base) {
+    Store store = stores.get(dbName);
+    return store == null ? base.iterator() : new MergedIterator(base.iterator(), store);
+  }
+
+  private static boolean nameEquals(byte[] name, byte[] key, int length) {
+    if (name.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (name[i] != key[PREFIX_LENGTH + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static class Store {
+    private final byte[][] keys;
+    private final byte[][] values;
+
+    private Store(byte[][] keys, byte[][] values) {
+      this.keys = keys;
+      this.values = values;
+    }
+
+    private int indexOf(byte[] key) {
+      return Arrays.binarySearch(keys, key, COMPARATOR);
+    }
+
+    private int lowerBound(byte[] key) {
+      int index = indexOf(key);
+      return index < 0 ? -index - 1 : index;
+    }
+
+    private static class Builder {
+      private final List<byte[]> keys = new ArrayList<>();
+      private final List<byte[]> values = new ArrayList<>();
+
+      private void add(byte[] key, byte[] value) {
+        keys.add(key);
+        values.add(value);
+      }
+
+      private Store build() {
+        return new Store(keys.toArray(new byte[0][]), values.toArray(new byte[0][]));
+      }
+    }
+  }
+
+  /**
+   * Merge of a base iterator and an overlay store, deleted keys are skipped.
+   */
+  private static class MergedIterator implements DBIterator {
+
+    private final DBIterator base;
+    private final Store store;
+    private int position;
+    private Map.Entry<byte[], byte[]> pending;
+    private Map.Entry<byte[], byte[]> current;
+    // no visible entry before the target of seekBefore
+    private boolean exhausted;
+
+    private MergedIterator(DBIterator base, Store store) {
+      this.base = base;
+      this.store = store;
+    }
+
+    @Override
+    public boolean valid() {
+      return hasNext();
+    }
+
+    @Override
+    public void seek(byte[] key) {
+      base.seek(key);
+      position = store.lowerBound(key);
+      pending = null;
+      current = null;
+      exhausted = false;
+    }
+
+    @Override
+    public void seekToFirst() {
+      base.seekToFirst();
+      position = 0;
+      pending = null;
+      current = null;
+      exhausted = false;
+    }
+
+    @Override
+    public void seekToLast() {
+      seekBack(null);
+    }
+
+    @Override
+    public void seekBefore(byte[] key) {
+      seekBack(key);
+    }
+
+    /**
+     * Find the last visible key before the bound, the larger of the last live overlay key
+     * and the last base key not deleted by the overlay, then seek to it.
+     *
+     * @param bound exclusive bound, null for past the last key
+     */
+    private void seekBack(byte[] bound) {
+      byte[] overlayKey = null;
+      int from = bound == null ? store.keys.length : store.lowerBound(bound);
+      for (int i = from - 1; i >= 0 && overlayKey == null; i--) {
+        overlayKey = store.values[i] == null ? null : store.keys[i];
+      }
+      if (bound == null) {
+        base.seekToLast();
+      } else {
+        base.seekBefore(bound);
+      }
+      byte[] baseKey = null;
+      while (baseKey == null && base.valid()) {
+        byte[] key = base.getKey();
+        int index = store.indexOf(key);
+        if (index < 0 || store.values[index] != null) {
+          baseKey = key;
+        } else {
+          base.seekBefore(key);
+        }
+      }
+      byte[] last = baseKey == null ? overlayKey : overlayKey == null ? baseKey
+          : COMPARATOR.compare(baseKey, overlayKey) >= 0 ? baseKey : overlayKey;
+      if (last == null) {
+        pending = null;
+        current = null;
+        exhausted = true;
+      } else {
+        seek(last);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (exhausted) {
+        return false;
+      }
+      while (current == null) {
+        if (pending == null && base.hasNext()) {
+          pending = base.next();
+        }
+        boolean overlay = position < store.keys.length;
+        if (pending == null && !overlay) {
+          return false;
+        }
+        int cmp = pending == null ? 1
+            : !overlay ? -1 : COMPARATOR.compare(pending.getKey(), store.keys[position]);
+        if (cmp < 0) {
+          current = pending;
+          pending = null;
+          continue;
+        }
+        if (cmp == 0) {
+          pending = null;
+        }
+        byte[] value = store.values[position];
+        if (value != null) {
+          current = Maps.immutableEntry(store.keys[position], value);
+        }
+        position++;
+      }
+      return true;
+    }
+
+    @Override
+    public byte[] getKey() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.getKey();
+    }
+
+    @Override
+    public byte[] getValue() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.getValue();
+    }
+
+    @Override
+    public Map.Entry<byte[], byte[]> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<byte[], byte[]> entry = current;
+      current = null;
+      return entry;
+    }
+
+    @Override
+    public void close() throws IOException {
+      base.close();
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package org.tron.plugins;
+
+import com.google.common.primitives.UnsignedBytes;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import me.tongfei.progressbar.ProgressBar;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.DBUtils;
+import org.tron.plugins.utils.db.BatchWriter;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DBIterator;
+import org.tron.plugins.utils.db.DbTool;
+
+/**
+ * Replays checkpoint dbs into the stores of a dataset.
+ * A checkpoint key is the length of the store name, the store name, then the real key,
+ * a checkpoint value is the operator byte followed by the real value.
+ * All checkpoints are folded per store first, so a key changed by several checkpoints
+ * is written once with its final value, then the stores are written in parallel.
+ */
+@Slf4j(topic = "lite")
+class CheckpointReplay {
+
+  private static final int PREFIX_LENGTH = 4;
+
+  private final String[] names;
+  private final byte[][] encodedNames;
+  private final List<TreeMap<byte[], byte[]>> folded;
+  private long records;
+
+  /**
+   * Create a replay for the stores, records of other stores are skipped.
+   *
+   * @param stores names of the stores to replay
+   */
+  CheckpointReplay(Collection<String> stores) {
+    this.names = stores.toArray(new String[0]);
+    this.encodedNames = new byte[names.length][];
+    this.folded = new ArrayList<>(names.length);
+    for (int i = 0; i < names.length; i++) {
+      encodedNames[i] = names[i].getBytes(StandardCharsets.UTF_8);
+      folded.add(new TreeMap<>(UnsignedBytes.lexicographicalComparator()));
+    }
+  }
+
+  /**
+   * Fold the checkpoints, read in parallel and folded in the given order,
+   * so a later checkpoint overwrites an earlier one.
+   *
+   * @param checkpoints checkpoint dbs, from the oldest to the latest
+   */
+  void fold(List<DBInterface> checkpoints) {
+    List<List<TreeMap<byte[], byte[]>>> parts = checkpoints.parallelStream()
+        .map(this::read).collect(Collectors.toList());
+    for (List<TreeMap<byte[], byte[]>> part : parts) {
+      for (int i = 0; i < names.length; i++) {
+        folded.get(i).putAll(part.get(i));
+      }
+    }
+  }
+
+  /**
+   * Write the folded records to the stores of the dest dir, one batch writer per store.
+   *
+   * @param destDir parent dir of the stores
+   */
+  void apply(String destDir) throws IOException, RocksDBException {
+    apply(destDir, Arrays.asList(names));
+  }
+
+  /**
+   * Write the folded records of some stores to the dest dir, one batch writer per store.
+   * The folded records are only read, so several dest dirs may be written concurrently.
+   *
+   * @param destDir parent dir of the stores
+   * @param stores names of the stores to write
+   */
+  void apply(String destDir, Collection<String> stores) throws IOException, RocksDBException {
+    List<Integer> touched = new ArrayList<>();
+    List<DBInterface> dbs = new ArrayList<>(names.length);
+    for (int i = 0; i < names.length; i++) {
+      boolean touch = stores.contains(names[i]) && !folded.get(i).isEmpty();
+      // resolve dbs here, the db cache of DbTool is not meant for concurrent opening
+      dbs.add(touch ? DbTool.getDB(destDir, names[i]) : null);
+      if (touch) {
+        touched.add(i);
+      }
+    }
+    long keys = touched.stream().mapToLong(i -> folded.get(i).size()).sum();
+    logger.info("Replay {} checkpoint records as {} keys of {} stores to {}.", records, keys,
+        touched.size(), destDir);
+    ProgressBar.wrap(touched.parallelStream(), "replayCheckpoint").forEach(i -> {
+      try (BatchWriter writer = new BatchWriter(dbs.get(i))) {
+        for (Map.Entry<byte[], byte[]> entry : folded.get(i).entrySet()) {
+          byte[] value = entry.getValue();
+          if (value.length != 1) {
+            writer.put(entry.getKey(), Arrays.copyOfRange(value, 1, value.length));
+          } else if (DBUtils.Operator.DELETE.getValue() == value[0]) {
+            writer.delete(entry.getKey());
+          } else {
+            writer.put(entry.getKey(), new byte[0]);
+          }
+        }
+      }
+    });
+  }
+
+  private List<TreeMap<byte[], byte[]>> read(DBInterface checkpoint) {
+    List<TreeMap<byte[], byte[]>> part = new ArrayList<>(names.length);
+    for (int i = 0; i < names.length; i++) {
+      part.add(new TreeMap<>(UnsignedBytes.lexicographicalComparator()));
+    }
+    long count = 0;
+    // keys of one store are adjacent, so the store of the previous key is tried first
+    int hint = -1;
+    try (DBIterator iterator = checkpoint.iterator()) {
+      for (iterator.seekToFirst(); iterator.hasNext(); iterator.next()) {
+        byte[] key = iterator.getKey();
+        int store = storeOf(key, hint);
+        count++;
+        if (store < 0) {
+          continue;
+        }
+        hint = store;
+        int offset = PREFIX_LENGTH + encodedNames[store].length;
+        part.get(store).put(Arrays.copyOfRange(key, offset, key.length), iterator.getValue());
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    synchronized (this) {
+      records += count;
+    }
+    return part;
+  }
+
+  /**
+   * Find the store of a checkpoint key without decoding the store name.
+   *
+   * @param key checkpoint key
+   * @param hint store to try first, -1 for none
+   * @return index of the store, -1 if the store is not replayed
+   */
+  int storeOf(byte[] key, int hint) {
+    if (key.length < PREFIX_LENGTH) {
+      return -1;
+    }
+    int length = (key[0] & 0xff) << 24 | (key[1] & 0xff) << 16
+        | (key[2] & 0xff) << 8 | (key[3] & 0xff);
+    if (length < 0 || key.length < PREFIX_LENGTH + length) {
+      return -1;
+    }
+    if (hint >= 0 && nameEquals(encodedNames[hint], key, length)) {
+      return hint;
+    }
+    for (int i = 0; i < encodedNames.length; i++) {
+      if (i != hint && nameEquals(encodedNames[i], key, length)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean nameEquals(byte[] name, byte[] key, int length) {
+    if (name.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (name[i] != key[PREFIX_LENGTH + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,232 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.ChainedDigest;
+import org.tron.plugins.utils.db.DBIterator;
+import org.tron.plugins.utils.db.KeyRange;
+
+/**
+ * Progress journal of one store conversion, kept next to the destination store.
+ * Records the ranges of the store, the last committed key, the running digest
+ * and the finished sst files of each range. Saved by writing a temp file
+ * then renaming it atomically, so a crash leaves either the old or the new journal.
+ */
+@Slf4j(topic = "convert")
+class ConvertJournal {
+
+  private static final String SUFFIX = ".journal";
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final String KEY_MODE = "mode";
+  private static final String KEY_RANGES = "ranges";
+  private static final String KEY_INGESTED = "ingested";
+
+  private final File file;
+  private final String mode;
+  @Getter
+  private final List<Range> ranges;
+  @Getter
+  @Setter
+  private boolean ingested;
+
+  private ConvertJournal(File file, String mode, List<Range> ranges) {
+    this.file = file;
+    this.mode = mode;
+    this.ranges = ranges;
+  }
+
+  static File fileOf(String dstDir, String dbName) {
+    return new File(dstDir, dbName + SUFFIX);
+  }
+
+  static ConvertJournal create(File file, String mode, List<KeyRange> keyRanges) {
+    List<Range> ranges = new ArrayList<>(keyRanges.size());
+    for (int i = 0; i < keyRanges.size(); i++) {
+      ranges.add(new Range(i, keyRanges.get(i)));
+    }
+    return new ConvertJournal(file, mode, ranges);
+  }
+
+  /**
+   * Load the journal of an interrupted conversion.
+   *
+   * @param file journal file
+   * @param mode conversion mode, a journal of another mode is not resumable
+   * @return the journal, null if not exists or not resumable
+   */
+  static ConvertJournal load(File file, String mode) {
+    if (!file.exists()) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file),
+        StandardCharsets.UTF_8)) {
+      properties.load(reader);
+      if (!mode.equals(properties.getProperty(KEY_MODE))) {
+        logger.info("Journal {} is for mode {}, not resumable.", file,
+            properties.getProperty(KEY_MODE));
+        return null;
+      }
+      int size = Integer.parseInt(properties.getProperty(KEY_RANGES));
+      List<Range> ranges = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        ranges.add(Range.load(i, properties));
+      }
+      ConvertJournal journal = new ConvertJournal(file, mode, ranges);
+      journal.ingested = Boolean.parseBoolean(properties.getProperty(KEY_INGESTED));
+      return journal;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Journal {} is broken, not resumable.", file, e);
+      return null;
+    }
+  }
+
+  synchronized void save() throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(KEY_MODE, mode);
+    properties.setProperty(KEY_RANGES, String.valueOf(ranges.size()));
+    properties.setProperty(KEY_INGESTED, String.valueOf(ingested));
+    ranges.forEach(range -> range.store(properties));
+    File tmp = new File(file.getPath() + TMP_SUFFIX);
+    try (FileOutputStream out = new FileOutputStream(tmp);
+         Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      properties.store(writer, "convert journal, PLEASE DO NOT EDIT!");
+      writer.flush();
+      out.getFD().sync();
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  void delete() {
+    if (file.exists() && !file.delete()) {
+      logger.warn("Delete journal {} failed.", file);
+    }
+  }
+
+  static class Range {
+
+    @Getter
+    private final int index;
+    @Getter
+    private final KeyRange keyRange;
+    @Getter
+    private byte[] last;
+    @Getter
+    private boolean done;
+    private ChainedDigest digest = new ChainedDigest();
+    @Getter
+    private final List<String> files = Collections.synchronizedList(new ArrayList<>());
+
+    private Range(int index, KeyRange keyRange) {
+      this.index = index;
+      this.keyRange = keyRange;
+    }
+
+    /**
+     * The range from the last committed key on, the key itself included, skipped by
+     * {@link #skipCommitted}. Seeking past it by appending 0x00 only holds for bytewise
+     * stores, the price keys of market_pair_price_to_order ignore the trailing byte.
+     */
+    KeyRange remaining() {
+      return last == null ? keyRange : new KeyRange(last, keyRange.getEnd());
+    }
+
+    /**
+     * Skip the last committed key, if the iterator of {@link #remaining} is on it.
+     *
+     * @param iterator iterator positioned at the first key of the remaining range
+     */
+    void skipCommitted(DBIterator iterator) {
+      if (last != null && iterator.hasNext() && Arrays.equals(iterator.getKey(), last)) {
+        iterator.next();
+      }
+    }
+
+    /**
+     * A digest to continue from the last committed key.
+     */
+    synchronized ChainedDigest resumeDigest() {
+      return new ChainedDigest(digest.getChain(), digest.getCount());
+    }
+
+    synchronized long getCount() {
+      return digest.getCount();
+    }
+
+    synchronized boolean matches(ChainedDigest other) {
+      return digest.matches(other);
+    }
+
+    synchronized String digestString() {
+      return digest.toString();
+    }
+
+    /**
+     * Record the progress, the data up to the last key must be durable already.
+     *
+     * @param last last committed key
+     * @param digest digest up to the last key
+     * @param done whether the range is done
+     */
+    synchronized void commit(byte[] last, ChainedDigest digest, boolean done) {
+      if (last != null) {
+        this.last = last;
+      }
+      this.digest = new ChainedDigest(digest.getChain(), digest.getCount());
+      this.done = done;
+    }
+
+    private synchronized void store(Properties properties) {
+      String prefix = "range." + index + ".";
+      properties.setProperty(prefix + "start", toHex(keyRange.getStart()));
+      properties.setProperty(prefix + "end", toHex(keyRange.getEnd()));
+      properties.setProperty(prefix + "last", toHex(last));
+      properties.setProperty(prefix + "done", String.valueOf(done));
+      properties.setProperty(prefix + "count", String.valueOf(digest.getCount()));
+      properties.setProperty(prefix + "digest", toHex(digest.getChain()));
+      properties.setProperty(prefix + "files", String.join(",", files));
+    }
+
+    private static Range load(int index, Properties properties) {
+      String prefix = "range." + index + ".";
+      Range range = new Range(index, new KeyRange(
+          fromHex(properties.getProperty(prefix + "start")),
+          fromHex(properties.getProperty(prefix + "end"))));
+      range.last = fromHex(properties.getProperty(prefix + "last"));
+      range.done = Boolean.parseBoolean(properties.getProperty(prefix + "done"));
+      range.digest = new ChainedDigest(fromHex(properties.getProperty(prefix + "digest")),
+          Long.parseLong(properties.getProperty(prefix + "count")));
+      String files = properties.getProperty(prefix + "files", "");
+      if (!files.isEmpty()) {
+        range.files.addAll(Arrays.asList(files.split(",")));
+      }
+      return range;
+    }
+
+    private static String toHex(byte[] key) {
+      return key == null ? "" : ByteArray.toHexString(key);
+    }
+
+    private static byte[] fromHex(String hex) {
+      return hex == null || hex.isEmpty() ? null : ByteArray.fromHexString(hex);
+    }
+  }
+}
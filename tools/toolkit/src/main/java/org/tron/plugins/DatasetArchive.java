@@ -0,0 +1,308 @@
+package org.tron.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.TarReader;
+import org.tron.plugins.utils.TarWriter;
+
+/**
+ * Streams lite datasets into one tar archive and unpacks them back.
+ * The archive starts with {@value #HEADER} naming the datasets and ends with
+ * {@value #CHECKSUMS}, the sha256 of every chunk of every file, so an import is verified
+ * as it is unpacked. When packing, chunks are read and hashed in parallel ahead of
+ * the single writer.
+ */
+@Slf4j(topic = "lite")
+class DatasetArchive {
+
+  static final String HEADER = "dataset.properties";
+  static final String CHECKSUMS = "dataset.sha256";
+  static final int CHUNK_SIZE = 8 * 1024 * 1024;
+  private static final String KEY_DATASETS = "datasets";
+  private static final String KEY_CHUNK_SIZE = "chunk";
+
+  private DatasetArchive() {
+  }
+
+  /**
+   * Pack the datasets of the base dir.
+   *
+   * @param baseDir parent dir of the datasets
+   * @param datasets dataset dir names, such as snapshot or history
+   * @param out archive stream, flushed but not closed
+   * @param threads reader threads
+   * @param chunkSize bytes of one hashed chunk
+   */
+  static void pack(Path baseDir, List<String> datasets, OutputStream out, int threads,
+      int chunkSize) throws IOException {
+    long mtime = System.currentTimeMillis() / 1000;
+    TarWriter tar = new TarWriter(out);
+    Properties header = new Properties();
+    header.setProperty(KEY_DATASETS, String.join(",", datasets));
+    header.setProperty(KEY_CHUNK_SIZE, String.valueOf(chunkSize));
+    ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    header.store(new OutputStreamWriter(headerBytes, StandardCharsets.UTF_8), "lite dataset");
+    putBytes(tar, HEADER, headerBytes.toByteArray(), mtime);
+
+    List<Path> files = new ArrayList<>();
+    for (String dataset : datasets) {
+      try (Stream<Path> paths = Files.walk(baseDir.resolve(dataset))) {
+        files.addAll(paths.sorted().collect(Collectors.toList()));
+      }
+    }
+    ByteArrayOutputStream checksums = new ByteArrayOutputStream();
+    Writer checksumWriter = new OutputStreamWriter(checksums, StandardCharsets.UTF_8);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    // bounded read ahead, at most twice the threads chunks are held in memory
+    Deque<Future<Chunk>> pending = new ArrayDeque<>();
+    long bytes = 0;
+    try {
+      for (Path file : files) {
+        String name = nameOf(baseDir, file);
+        if (Files.isDirectory(file)) {
+          drain(pending, 0, tar, checksumWriter);
+          tar.putDirectory(name, mtime);
+          continue;
+        }
+        long size = Files.size(file);
+        long offset = 0;
+        do {
+          int length = (int) Math.min(chunkSize, size - offset);
+          Chunk chunk = new Chunk(file, name, size, offset, length);
+          pending.add(executor.submit(chunk::load));
+          drain(pending, threads * 2, tar, checksumWriter);
+          offset += length;
+        } while (offset < size);
+        bytes += size;
+      }
+      drain(pending, 0, tar, checksumWriter);
+    } finally {
+      executor.shutdownNow();
+    }
+    checksumWriter.flush();
+    putBytes(tar, CHECKSUMS, checksums.toByteArray(), mtime);
+    tar.finish();
+    logger.info("Pack {} files, {} bytes of {}.", files.size(), bytes, datasets);
+  }
+
+  /**
+   * Unpack an archive into the dest dir, a single dataset is unpacked into the dest dir
+   * itself, several datasets into sub dirs of their names.
+   *
+   * @param in archive stream
+   * @param destDir dest dir
+   * @return the datasets of the archive
+   */
+  static List<String> unpack(InputStream in, Path destDir) throws IOException {
+    TarReader tar = new TarReader(in);
+    TarReader.Entry entry = tar.next();
+    if (entry == null || !HEADER.equals(entry.getName())) {
+      throw new IOException("not a lite dataset archive, " + HEADER + " not found");
+    }
+    Properties header = new Properties();
+    header.load(new InputStreamReader(new ByteArrayInputStream(readAll(tar)),
+        StandardCharsets.UTF_8));
+    List<String> datasets = Arrays.asList(header.getProperty(KEY_DATASETS).split(","));
+    int chunkSize = Integer.parseInt(header.getProperty(KEY_CHUNK_SIZE));
+    boolean strip = datasets.size() == 1;
+    Path root = destDir.toAbsolutePath().normalize();
+    Map<String, String> actual = new HashMap<>();
+    Map<String, String> expected = null;
+    MessageDigest digest = sha256();
+    byte[] buffer = new byte[64 * 1024];
+    while ((entry = tar.next()) != null) {
+      if (CHECKSUMS.equals(entry.getName())) {
+        expected = parseChecksums(readAll(tar));
+        continue;
+      }
+      Path target = resolve(root, entry.getName(), strip);
+      if (entry.isDirectory()) {
+        Files.createDirectories(target);
+        continue;
+      }
+      Files.createDirectories(target.getParent());
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target),
+          buffer.length)) {
+        long offset = 0;
+        long chunkStart = 0;
+        int n;
+        while ((n = tar.read(buffer, 0,
+            (int) Math.min(buffer.length, chunkStart + chunkSize - offset))) > 0) {
+          out.write(buffer, 0, n);
+          digest.update(buffer, 0, n);
+          offset += n;
+          if (offset - chunkStart == chunkSize) {
+            actual.put(entry.getName() + "@" + chunkStart, ByteArray.toHexString(digest.digest()));
+            chunkStart = offset;
+          }
+        }
+        if (offset > chunkStart || offset == 0) {
+          actual.put(entry.getName() + "@" + chunkStart, ByteArray.toHexString(digest.digest()));
+        }
+      }
+    }
+    if (expected == null) {
+      throw new IOException("archive is truncated, " + CHECKSUMS + " not found");
+    }
+    Map<String, String> checksums = expected;
+    long mismatch = expected.entrySet().stream()
+        .filter(e -> !e.getValue().equals(actual.get(e.getKey()))).count()
+        + actual.keySet().stream().filter(k -> !checksums.containsKey(k)).count();
+    if (mismatch > 0) {
+      throw new IOException(String.format("archive is broken, %d of %d chunks mismatch",
+          mismatch, expected.size()));
+    }
+    logger.info("Unpack {} chunks of {} to {}, all verified.", actual.size(), datasets, destDir);
+    return datasets;
+  }
+
+  private static void drain(Deque<Future<Chunk>> pending, int keep, TarWriter tar,
+      Writer checksums) throws IOException {
+    while (pending.size() > keep) {
+      Chunk chunk;
+      try {
+        chunk = pending.poll().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+            : new IOException(e.getCause());
+      }
+      if (chunk.offset == 0) {
+        tar.putFile(chunk.name, chunk.size, Files.getLastModifiedTime(chunk.file).toMillis()
+            / 1000);
+      }
+      tar.write(chunk.data, 0, chunk.length);
+      checksums.write(String.format("%s %d %d %s%n", chunk.sha256, chunk.offset, chunk.length,
+          chunk.name));
+      if (chunk.offset + chunk.length == chunk.size) {
+        tar.closeEntry();
+      }
+    }
+  }
+
+  private static void putBytes(TarWriter tar, String name, byte[] data, long mtime)
+      throws IOException {
+    tar.putFile(name, data.length, mtime);
+    tar.write(data, 0, data.length);
+    tar.closeEntry();
+  }
+
+  private static byte[] readAll(TarReader tar) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    while ((n = tar.read(buffer, 0, buffer.length)) > 0) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  private static Map<String, String> parseChecksums(byte[] data) throws IOException {
+    Map<String, String> checksums = new HashMap<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        // sha256 offset length name, the name may contain spaces
+        String[] fields = line.split(" ", 4);
+        checksums.put(fields[3] + "@" + fields[1], fields[0]);
+      }
+    }
+    return checksums;
+  }
+
+  private static Path resolve(Path root, String name, boolean strip) throws IOException {
+    String relative = name;
+    if (strip) {
+      int slash = name.indexOf('/');
+      relative = slash < 0 ? "" : name.substring(slash + 1);
+    }
+    Path target = root.resolve(relative).normalize();
+    if (!target.startsWith(root)) {
+      throw new IOException("entry out of the dest dir: " + name);
+    }
+    return target;
+  }
+
+  private static String nameOf(Path baseDir, Path file) {
+    return baseDir.relativize(file).toString().replace(File.separatorChar, '/');
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static class Chunk {
+    private final Path file;
+    private final String name;
+    private final long size;
+    private final long offset;
+    private final int length;
+    private byte[] data;
+    private String sha256;
+
+    private Chunk(Path file, String name, long size, long offset, int length) {
+      this.file = file;
+      this.name = name;
+      this.size = size;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private Chunk load() throws IOException {
+      data = new byte[length];
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, offset + buffer.position()) < 0) {
+            throw new IOException(String.format("%s changed while packing", file));
+          }
+        }
+      }
+      sha256 = ByteArray.toHexString(sha256().digest(data));
+      return this;
+    }
+  }
+}
@@ -13,8 +13,10 @@ import picocli.CommandLine;
         DbLite.class,
         DbCopy.class,
         DbRoot.class,
+        DbDiff.class,
         DbFork.class,
-        DbQuery.class
+        DbQuery.class,
+        DbStats.class
     },
     commandListHeading = "%nCommands:%n%nThe most commonly used db commands are:%n"
 )
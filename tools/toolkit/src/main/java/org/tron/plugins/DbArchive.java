@@ -1,25 +1,8 @@
 package org.tron.plugins;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
-
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
 import java.util.concurrent.Callable;
-import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import me.tongfei.progressbar.ProgressBar;
-import org.iq80.leveldb.CompressionType;
-import org.iq80.leveldb.DB;
-import org.iq80.leveldb.Options;
-import org.iq80.leveldb.impl.Filename;
-import org.tron.plugins.utils.FileUtils;
 import picocli.CommandLine;
 import picocli.CommandLine.Option;
 
@@ -45,6 +28,18 @@ public class DbArchive implements Callable<Integer> {
       description = "manifest min size(M) to archive. Default: ${DEFAULT-VALUE}")
   private int maxManifestSize;
 
+  @Option(names = {"--memory-budget"},
+      defaultValue = "0",
+      description = "memory(M) of the dbs reopened at a time, 0 for half of the max heap."
+          + " Default: ${DEFAULT-VALUE}")
+  private long memoryBudget;
+
+  @Option(names = {"--file-budget"},
+      defaultValue = "0",
+      description = "file handles of the dbs reopened at a time, 0 for half of the limit."
+          + " Default: ${DEFAULT-VALUE}")
+  private long fileBudget;
+
   @Option(names = {"-h", "--help"})
   private boolean help;
 
@@ -71,128 +66,9 @@ public class DbArchive implements Callable<Integer> {
       return 405;
     }
 
-    List<File> files = Arrays.stream(Objects.requireNonNull(dbDirectory.listFiles()))
-        .filter(File::isDirectory).collect(
-            Collectors.toList());
-
-    if (files.isEmpty()) {
-      spec.commandLine().getErr().format("Directory %s does not contain any database.",
-          databaseDirectory).println();
-      logger.info("Directory {} does not contain any database.", databaseDirectory);
-      return 0;
-    }
-    final long time = System.currentTimeMillis();
-    List<ArchiveManifest> services = new ArrayList<>();
-    files.forEach(f -> services.add(new ArchiveManifest(databaseDirectory, f.getName(),
-        maxManifestSize, maxBatchSize)));
-    ProgressBar.wrap(services.stream(), "archive task").parallel().forEach(Archive::doArchive);
-    spec.commandLine().getOut().println("archive db done.");
-
-    logger.info("DatabaseDirectory:{}, maxManifestSize:{}, maxBatchSize:{},"
-            + "database reopen use {} seconds total.",
-        databaseDirectory, maxManifestSize, maxBatchSize,
-        (System.currentTimeMillis() - time) / 1000);
-
-    return 0;
-  }
-
-
-  interface Archive {
-
-    default void doArchive() {
-
-    }
-  }
-
-  static class ArchiveManifest implements Archive {
-
-    private static final String KEY_ENGINE = "ENGINE";
-    private static final String LEVELDB = "LEVELDB";
-
-    private final Path srcDbPath;
-    private final String name;
-    private final Options options;
-    private final long startTime;
-
-    public ArchiveManifest(String src, String name, int maxManifestSize, int maxBatchSize) {
-      this.name = name;
-      this.srcDbPath = Paths.get(src, name);
-      this.startTime = System.currentTimeMillis();
-      this.options = newDefaultLevelDbOptions();
-      this.options.maxManifestSize(maxManifestSize);
-      this.options.maxBatchSize(maxBatchSize);
-    }
-
-    public static Options newDefaultLevelDbOptions() {
-      Options dbOptions = new Options();
-      dbOptions.createIfMissing(true);
-      dbOptions.paranoidChecks(true);
-      dbOptions.verifyChecksums(true);
-      dbOptions.compressionType(CompressionType.SNAPPY);
-      dbOptions.blockSize(4 * 1024);
-      dbOptions.writeBufferSize(10 * 1024 * 1024);
-      dbOptions.cacheSize(10 * 1024 * 1024L);
-      dbOptions.maxOpenFiles(1000);
-      dbOptions.maxBatchSize(64_000);
-      dbOptions.maxManifestSize(128);
-      return dbOptions;
-    }
-
-    public void open() throws IOException {
-      DB database = factory.open(this.srcDbPath.toFile(), this.options);
-      database.close();
-    }
-
-    public boolean checkManifest(String dir) throws IOException {
-      // Read "CURRENT" file, which contains a pointer to the current manifest file
-      File currentFile = new File(dir, Filename.currentFileName());
-      if (!currentFile.exists()) {
-        return false;
-      }
-      String currentName = com.google.common.io.Files.asCharSource(currentFile, UTF_8).read();
-      if (currentName.isEmpty() || currentName.charAt(currentName.length() - 1) != '\n') {
-        return false;
-      }
-      currentName = currentName.substring(0, currentName.length() - 1);
-      File current = new File(dir, currentName);
-      if (!current.isFile()) {
-        return false;
-      }
-      long maxSize = options.maxManifestSize();
-      if (maxSize < 0) {
-        return false;
-      }
-      logger.info("CurrentName {}/{},size {} kb.", dir, currentName, current.length() / 1024);
-      if ("market_pair_price_to_order".equalsIgnoreCase(this.name)) {
-        logger.info("Db {} ignored.", this.name);
-        return false;
-      }
-      return current.length() >= maxSize * 1024 * 1024;
-    }
-
-    @Override
-    public void doArchive() {
-      File levelDbFile = srcDbPath.toFile();
-      if (!levelDbFile.exists()) {
-        logger.info("File {},does not exist, ignored.", srcDbPath);
-        return;
-      }
-      try {
-        if (checkManifest(levelDbFile.toString())) {
-          if (!FileUtils.isLevelDBEngine(srcDbPath)) {
-            logger.info("Db {},not leveldb, ignored.", this.name);
-            return;
-          }
-          open();
-          logger.info("Db {} archive use {} ms.", this.name,
-              (System.currentTimeMillis() - startTime));
-        } else {
-          logger.info("Db {},no need, ignored.", levelDbFile);
-        }
-      } catch (Exception e) {
-        throw new RuntimeException("Db " + this.name + " archive failed.", e);
-      }
-    }
+    ArchiveManifest.Report report = ArchiveManifest.archive(databaseDirectory,
+        maxManifestSize, maxBatchSize, memoryBudget, fileBudget);
+    spec.commandLine().getOut().format("archive db done, %s.", report).println();
+    return report.getFails();
   }
-
 }
@@ -1,27 +1,43 @@
 package org.tron.plugins;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import me.tongfei.progressbar.ProgressBar;
 import org.fusesource.leveldbjni.JniDBFactory;
-import org.iq80.leveldb.DB;
-import org.iq80.leveldb.DBIterator;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.IngestExternalFileOptions;
+import org.rocksdb.Options;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
-import org.rocksdb.RocksIterator;
-import org.rocksdb.Status;
+import org.rocksdb.Slice;
+import org.rocksdb.SstFileWriter;
+import org.tron.plugins.utils.ChainedDigest;
 import org.tron.plugins.utils.DBUtils;
 import org.tron.plugins.utils.FileUtils;
+import org.tron.plugins.utils.db.BatchWriter;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DBIterator;
+import org.tron.plugins.utils.db.DbTool;
+import org.tron.plugins.utils.db.LevelDBImpl;
+import org.tron.plugins.utils.db.RangeIterator;
+import org.tron.plugins.utils.db.RocksDBImpl;
 import picocli.CommandLine;
 
 
@@ -38,7 +54,11 @@ public class DbConvert implements Callable<Integer> {
     RocksDB.loadLibrary();
   }
 
-  private static final int BATCH  = 256;
+  private static final long SST_FILE_SIZE = 256 * 1024 * 1024L;
+  private static final String SST_DIR_SUFFIX = ".sst";
+  private static final long RANGE_SIZE = 512 * 1024 * 1024L;
+  private static final int MAX_RANGES = DbTool.CPUS * 4;
+  private static final long CHECKPOINT_INTERVAL = 60_000;
 
   @CommandLine.Spec
   CommandLine.Model.CommandSpec spec;
@@ -57,6 +77,12 @@ public class DbConvert implements Callable<Integer> {
           + "Default: ${DEFAULT-VALUE}")
   private boolean safe;
 
+  @CommandLine.Option(names = {"--sst"},
+      description = "Convert like safe mode, but write sorted sst files in parallel "
+          + "and ingest them, skip the memtable, the wal and the compaction."
+          + "Default: ${DEFAULT-VALUE}")
+  private boolean sst;
+
   @CommandLine.Option(names = {"-h", "--help"})
   private boolean help;
 
@@ -93,25 +119,28 @@ public class DbConvert implements Callable<Integer> {
       return 0;
     }
     final long time = System.currentTimeMillis();
-    List<Converter> services = new ArrayList<>();
+    List<DbConverter> services = new ArrayList<>();
     files.forEach(f -> services.add(
-        new DbConverter(src.getPath(), dest.getPath(), f.getName(), safe)));
+        new DbConverter(src.getPath(), dest.getPath(), f.getName(), safe, sst)));
     cpList.forEach(f -> services.add(
         new DbConverter(
             Paths.get(src.getPath(), DBUtils.CHECKPOINT_DB_V2).toString(),
             Paths.get(dest.getPath(), DBUtils.CHECKPOINT_DB_V2).toString(),
-            f.getName(), safe)));
-    List<String> fails = ProgressBar.wrap(services.stream(), "convert task").parallel().map(
-        dbConverter -> {
-          try {
-            return dbConverter.doConvert() ? null : dbConverter.name();
-          } catch (Exception e) {
-            logger.error("{}", e);
-            spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
-                .errorText(e.getMessage()));
-            return dbConverter.name();
-          }
-        }).filter(Objects::nonNull).collect(Collectors.toList());
+            f.getName(), safe, sst)));
+    List<String> fails;
+    if (safe || sst) {
+      fails = convertByRange(services);
+    } else {
+      fails = ProgressBar.wrap(services.stream(), "convert task").parallel().map(
+          dbConverter -> {
+            try {
+              return dbConverter.doConvert() ? null : dbConverter.name();
+            } catch (Exception e) {
+              printError(e);
+              return dbConverter.name();
+            }
+          }).filter(Objects::nonNull).collect(Collectors.toList());
+    }
     long during = (System.currentTimeMillis() - time) / 1000;
     spec.commandLine().getOut().format("convert db done, fails: %s, take %d s.",
         fails, during).println();
@@ -119,6 +148,82 @@ public class DbConvert implements Callable<Integer> {
     return fails.size();
   }
 
+  /**
+   * Convert the key ranges of all stores on one pool, the largest range first,
+   * so the time is bounded by the total throughput rather than by the largest store.
+   * The worker which converts the last range of a store finishes the store.
+   *
+   * @param converters stores to convert
+   * @return failed stores
+   */
+  private List<String> convertByRange(List<DbConverter> converters) throws InterruptedException {
+    List<String> fails = Collections.synchronizedList(new ArrayList<>());
+    List<RangeTask> tasks = new ArrayList<>();
+    for (DbConverter converter : converters) {
+      try {
+        List<ConvertJournal.Range> ranges = converter.prepare();
+        if (ranges == null) {
+          continue;
+        }
+        if (ranges.isEmpty()) {
+          if (!converter.finish()) {
+            fails.add(converter.name());
+          }
+          continue;
+        }
+        long size = converter.size / ranges.size();
+        ranges.forEach(range -> tasks.add(new RangeTask(converter, range, size)));
+      } catch (Exception e) {
+        printError(e);
+        fails.add(converter.name());
+      }
+    }
+    tasks.sort(Comparator.comparingLong((RangeTask task) -> task.size).reversed());
+    ExecutorService executor = Executors.newFixedThreadPool(DbTool.CPUS);
+    try (ProgressBar pb = new ProgressBar("convert task", tasks.size())) {
+      for (RangeTask task : tasks) {
+        executor.submit(() -> {
+          DbConverter converter = task.converter;
+          converter.convert(task.range);
+          if (converter.complete()) {
+            try {
+              if (!converter.finish()) {
+                fails.add(converter.name());
+              }
+            } catch (Exception e) {
+              printError(e);
+              fails.add(converter.name());
+            }
+          }
+          pb.step();
+        });
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    return fails;
+  }
+
+  private void printError(Exception e) {
+    logger.error("{}", e);
+    spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+        .errorText(e.getMessage()));
+  }
+
+  private static class RangeTask {
+    private final DbConverter converter;
+    private final ConvertJournal.Range range;
+    private final long size;
+
+    RangeTask(DbConverter converter, ConvertJournal.Range range, long size) {
+      this.converter = converter;
+      this.range = range;
+      this.size = size;
+    }
+  }
+
   interface Converter {
 
     boolean doConvert() throws Exception;
@@ -134,63 +239,178 @@ public class DbConvert implements Callable<Integer> {
     private final Path dstDbPath;
 
     private long srcDbKeyCount = 0L;
-    private long dstDbKeyCount = 0L;
-    private long srcDbKeySum = 0L;
-    private long dstDbKeySum = 0L;
-    private long srcDbValueSum = 0L;
-    private long dstDbValueSum = 0L;
+    private long stallMillis = 0L;
 
     private boolean safe;
-
-    public DbConverter(String srcDir, String dstDir, String name, boolean safe) {
+    private boolean sst;
+
+    private final AtomicInteger remaining = new AtomicInteger();
+    private volatile boolean failed;
+    private long startTime;
+    private long size;
+    private DBInterface level;
+    private RocksDB rocks;
+    private Options options;
+    private EnvOptions envOptions;
+    private File sstDir;
+    private ConvertJournal journal;
+
+    public DbConverter(String srcDir, String dstDir, String name, boolean safe, boolean sst) {
       this.srcDir = srcDir;
       this.dstDir = dstDir;
       this.dbName = name;
       this.srcDbPath = Paths.get(this.srcDir, name);
       this.dstDbPath = Paths.get(this.dstDir, name);
       this.safe = safe;
+      this.sst = sst;
     }
 
     @Override
     public boolean doConvert() throws Exception {
+      List<ConvertJournal.Range> ranges = prepare();
+      if (ranges == null) {
+        return true;
+      }
+      for (ConvertJournal.Range range : ranges) {
+        convert(range);
+        complete();
+      }
+      return finish();
+    }
 
+    /**
+     * Check the store, resume it from its journal or clear the destination
+     * and split the store into key ranges, bigger stores get more ranges.
+     *
+     * @return ranges to convert, empty if copied directly, null if skipped
+     */
+    List<ConvertJournal.Range> prepare() throws Exception {
       if (checkDone(this.dstDbPath.toString())) {
         logger.info(" {} is done, skip it.", this.dbName);
-        return true;
+        return null;
       }
 
       File levelDbFile = srcDbPath.toFile();
       if (!levelDbFile.exists()) {
         logger.info(" {} does not exist.", srcDbPath);
-        return true;
+        return null;
       }
       if (!FileUtils.isLevelDBEngine(srcDbPath)) {
         logger.info("Db {},not leveldb, ignored.", this.dbName);
-        return true;
+        return null;
       }
-      long startTime = System.currentTimeMillis();
-      if (this.dstDbPath.toFile().exists()) {
-        logger.info(" {} begin to clear exist database directory", this.dbName);
-        FileUtils.deleteDir(this.dstDbPath.toFile());
-        logger.info(" {} clear exist database directory done.", this.dbName);
+      startTime = System.currentTimeMillis();
+      File journalFile = ConvertJournal.fileOf(dstDir, dbName);
+      sstDir = Paths.get(dstDir, dbName + SST_DIR_SUFFIX).toFile();
+      if (safe || sst) {
+        journal = ConvertJournal.load(journalFile, sst ? "sst" : "safe");
+      }
+      if (journal == null) {
+        clear();
       }
 
       FileUtils.createDirIfNotExists(dstDir);
 
-      logger.info("Convert database {} start", this.dbName);
-      if (safe) {
-        convertLevelToRocks();
-        compact();
-      } else {
+      if (!safe && !sst) {
+        logger.info("Convert database {} start", this.dbName);
         FileUtils.copyDir(Paths.get(srcDir), Paths.get(dstDir), dbName);
+        return Collections.emptyList();
+      }
+      if (sst) {
+        FileUtils.createDirIfNotExists(sstDir.getPath());
+      }
+      size = dirSize(levelDbFile);
+      if (journal == null) {
+        logger.info("Convert database {} start", this.dbName);
+        int parts = (int) Math.min(MAX_RANGES, size / RANGE_SIZE + 1);
+        try (DBInterface db = new LevelDBImpl(DBUtils.newLevelDb(srcDbPath), dbName)) {
+          journal = ConvertJournal.create(journalFile, sst ? "sst" : "safe",
+              DbTool.splitRanges(db, parts));
+        }
+        journal.save();
+      } else {
+        logger.info("Convert database {} resume from journal", this.dbName);
+      }
+      List<ConvertJournal.Range> ranges = new ArrayList<>();
+      for (ConvertJournal.Range range : journal.getRanges()) {
+        if (range.isDone()) {
+          addStat(range.getCount());
+        } else {
+          ranges.add(range);
+        }
+      }
+      remaining.set(ranges.size());
+      logger.info("Convert database {} in {} ranges, {} to do", this.dbName,
+          journal.getRanges().size(), ranges.size());
+      return ranges;
+    }
+
+    /**
+     * Convert one range from its last committed key,
+     * failures are recorded and reported by {@link #finish()}.
+     *
+     * @param range key range
+     */
+    void convert(ConvertJournal.Range range) {
+      if (failed) {
+        return;
+      }
+      JniDBFactory.pushMemoryPool(1024 * 1024);
+      try {
+        open();
+        try (DBIterator iterator = new RangeIterator(level.iterator(), range.remaining())) {
+          iterator.seekToFirst();
+          range.skipCommitted(iterator);
+          if (sst) {
+            convertLevelToSst(iterator, range);
+          } else {
+            convertLevelToRocks(iterator, range);
+          }
+          addStat(range.getCount());
+        }
+      } catch (Exception e) {
+        failed = true;
+        logger.error("Convert database {} range {} failed", this.dbName, range.getIndex(), e);
+      } finally {
+        JniDBFactory.popMemoryPool();
       }
-      boolean result = check() && createEngine(dstDbPath.toString());
+    }
+
+    /**
+     * Mark one range done.
+     *
+     * @return true if all ranges are done
+     */
+    boolean complete() {
+      return remaining.decrementAndGet() <= 0;
+    }
+
+    /**
+     * Merge the ranges into the rocksdb, check it and write the engine.
+     *
+     * @return if ok
+     */
+    boolean finish() throws Exception {
+      close();
+      if (!failed) {
+        if (sst) {
+          if (!journal.isIngested()) {
+            ingest();
+            journal.setIngested(true);
+            journal.save();
+          }
+        } else if (safe) {
+          compact();
+        }
+      }
+      boolean result = !failed && check() && createEngine(dstDbPath.toString());
       long etime = System.currentTimeMillis();
 
       if (result) {
-        if (safe) {
-          logger.info("Convert database {} successful end with {} key-value {} minutes",
-              this.dbName, this.srcDbKeyCount, (etime - startTime) / 1000.0 / 60);
+        if (safe || sst) {
+          logger.info("Convert database {} successful end with {} key-value {} minutes,"
+                  + " stalled {} s", this.dbName, this.srcDbKeyCount,
+              (etime - startTime) / 1000.0 / 60, stallMillis / 1000.0);
         } else {
           logger.info("Convert database {} successful end  {} minutes",
               this.dbName, (etime - startTime) / 1000.0 / 60);
@@ -198,103 +418,195 @@ public class DbConvert implements Callable<Integer> {
 
       } else {
         logger.info("Convert database {} failure", this.dbName);
-        if (this.dstDbPath.toFile().exists()) {
-          logger.info(" {} begin to clear exist database directory", this.dbName);
-          FileUtils.deleteDir(this.dstDbPath.toFile());
-          logger.info(" {} clear exist database directory done.", this.dbName);
-        }
       }
+      // a failure is not resumable, start over next time
+      clear();
       return result;
     }
 
+    /**
+     * Clear the journal and the temp files, and the destination when not converted.
+     */
+    private void clear() {
+      if (!checkDone(this.dstDbPath.toString()) && this.dstDbPath.toFile().exists()) {
+        logger.info(" {} begin to clear exist database directory", this.dbName);
+        FileUtils.deleteDir(this.dstDbPath.toFile());
+        logger.info(" {} clear exist database directory done.", this.dbName);
+      }
+      if (sstDir.exists()) {
+        FileUtils.deleteDir(sstDir);
+      }
+      ConvertJournal.fileOf(dstDir, dbName).delete();
+    }
+
     @Override
     public String name() {
       return dbName;
     }
 
-    private void batchInsert(RocksDB rocks, List<byte[]> keys, List<byte[]> values)
-        throws Exception {
-      try (org.rocksdb.WriteBatch batch = new org.rocksdb.WriteBatch()) {
-        for (int i = 0; i < keys.size(); i++) {
-          byte[] k = keys.get(i);
-          byte[] v = values.get(i);
-          batch.put(k, v);
-        }
-        write(rocks, batch);
+    /**
+     * Open the source and the destination on the first range, the ranges of all stores
+     * are queued at once, so only stores in progress hold their dbs.
+     */
+    private synchronized void open() throws Exception {
+      if (level != null) {
+        return;
+      }
+      level = new LevelDBImpl(DBUtils.newLevelDb(srcDbPath), dbName);
+      if (sst) {
+        options = DBUtils.newRocksDbOptions(dstDbPath, true);
+        envOptions = new EnvOptions();
+      } else {
+        rocks = DBUtils.newRocksDbForBulkLoad(dstDbPath);
+      }
+    }
+
+    private synchronized void close() throws IOException {
+      if (level != null) {
+        level.close();
+        level = null;
+      }
+      if (rocks != null) {
+        rocks.close();
+        rocks = null;
+      }
+      if (options != null) {
+        options.close();
+        options = null;
+      }
+      if (envOptions != null) {
+        envOptions.close();
+        envOptions = null;
       }
-      keys.clear();
-      values.clear();
+    }
+
+    private synchronized void addStat(long count) {
+      srcDbKeyCount += count;
+    }
+
+    private synchronized void addStall(long millis) {
+      stallMillis += millis;
     }
 
     /**
-     * https://github.com/facebook/rocksdb/issues/6625.
+     * https://github.com/facebook/rocksdb/wiki/RocksDB-FAQ .
+     *  What's the fastest way to load data into RocksDB?
      *
-     * @param rocks db
-     * @param batch write batch
-     * @throws Exception RocksDBException
+     * @param iterator entries of the range left
+     * @param range range progress, committed at checkpoints
      */
-    private void write(RocksDB rocks, org.rocksdb.WriteBatch batch) throws Exception {
+    private void convertLevelToRocks(DBIterator iterator, ConvertJournal.Range range)
+        throws Exception {
+      ChainedDigest digest = range.resumeDigest();
+      long checkpoint = System.currentTimeMillis();
+      // paced by the write stalls of rocksdb, shares the rocks of the store, not closed
+      BatchWriter writer = new BatchWriter(new RocksDBImpl(rocks, dbName));
       try {
-        rocks.write(new org.rocksdb.WriteOptions(), batch);
-      } catch (RocksDBException e) {
-        // retry
-        if (maybeRetry(e)) {
-          TimeUnit.MILLISECONDS.sleep(1);
-          write(rocks, batch);
-        } else {
-          throw e;
+        while (iterator.hasNext()) {
+          Map.Entry<byte[], byte[]> entry = iterator.next();
+          byte[] key = entry.getKey();
+          byte[] value = entry.getValue();
+          digest.update(key, value);
+          writer.put(key, value);
+          if (System.currentTimeMillis() - checkpoint >= CHECKPOINT_INTERVAL) {
+            writer.flush();
+            checkpoint(range, key, digest);
+            checkpoint = System.currentTimeMillis();
+          }
         }
+        writer.flush();
+      } finally {
+        addStall(writer.getStallMillis());
       }
+      range.commit(null, digest, true);
+      journal.save();
     }
 
-    private boolean maybeRetry(RocksDBException e) {
-      boolean retry = false;
-      if (e.getStatus() != null) {
-        retry = e.getStatus().getCode() == Status.Code.TryAgain
-            || e.getStatus().getCode() == Status.Code.Busy
-            || e.getStatus().getCode() == Status.Code.Incomplete;
+    /**
+     * Make the writes up to the key durable, then commit the key to the journal.
+     * The WAL of the bulk load db is not synced, so flush the memtables.
+     */
+    private void checkpoint(ConvertJournal.Range range, byte[] key, ChainedDigest digest)
+        throws Exception {
+      synchronized (this) {
+        try (FlushOptions flushOptions = new FlushOptions().setWaitForFlush(true)) {
+          rocks.flush(flushOptions);
+        }
       }
-      return retry || (e.getMessage() != null && ("Write stall".equalsIgnoreCase(e.getMessage())
-          || ("Incomplete").equalsIgnoreCase(e.getMessage())));
+      range.commit(key, digest, false);
+      journal.save();
     }
 
     /**
-     * https://github.com/facebook/rocksdb/wiki/RocksDB-FAQ .
-     *  What's the fastest way to load data into RocksDB?
+     * Leveldb iteration is sorted already, write the range into its own sst files,
+     * {@link #ingest()} merges the files of all ranges at once.
+     * Each finished file is a checkpoint, a resumed range rewrites only its last file.
      *
-     * @return if ok
+     * @param iterator entries of the range left
+     * @param range range progress, committed for each finished file
      */
-    public void convertLevelToRocks() throws Exception {
-      List<byte[]> keys = new ArrayList<>(BATCH);
-      List<byte[]> values = new ArrayList<>(BATCH);
-      JniDBFactory.pushMemoryPool(1024 * 1024);
-      try (
-          DB level = DBUtils.newLevelDb(srcDbPath);
-          RocksDB rocks = DBUtils.newRocksDbForBulkLoad(dstDbPath);
-          DBIterator levelIterator = level.iterator(
-              new org.iq80.leveldb.ReadOptions().fillCache(false))) {
-
-        levelIterator.seekToFirst();
-
-        while (levelIterator.hasNext()) {
-          Map.Entry<byte[], byte[]> entry = levelIterator.next();
+    private void convertLevelToSst(DBIterator iterator, ConvertJournal.Range range)
+        throws Exception {
+      ChainedDigest digest = range.resumeDigest();
+      SstFileWriter writer = null;
+      long bytes = 0;
+      try {
+        while (iterator.hasNext()) {
+          Map.Entry<byte[], byte[]> entry = iterator.next();
           byte[] key = entry.getKey();
           byte[] value = entry.getValue();
-          srcDbKeyCount++;
-          srcDbKeySum = byteArrayToIntWithOne(srcDbKeySum, key);
-          srcDbValueSum = byteArrayToIntWithOne(srcDbValueSum, value);
-          keys.add(key);
-          values.add(value);
-          if (keys.size() >= BATCH) {
-            batchInsert(rocks, keys, values);
+          digest.update(key, value);
+          if (writer == null) {
+            writer = new SstFileWriter(envOptions, options);
+            writer.open(sstFile(range, range.getFiles().size()).getPath());
+          }
+          try (Slice k = new Slice(key); Slice v = new Slice(value)) {
+            writer.put(k, v);
+          }
+          bytes += key.length + value.length;
+          // roll the file, keep the files of a range in a moderate size
+          if (bytes >= SST_FILE_SIZE) {
+            writer.finish();
+            writer.close();
+            writer = null;
+            bytes = 0;
+            range.getFiles().add(sstFile(range, range.getFiles().size()).getName());
+            range.commit(key, digest, false);
+            journal.save();
           }
         }
-        // clear
-        if (!keys.isEmpty()) {
-          batchInsert(rocks, keys, values);
+        if (writer != null) {
+          writer.finish();
+          range.getFiles().add(sstFile(range, range.getFiles().size()).getName());
         }
       } finally {
-        JniDBFactory.popMemoryPool();
+        if (writer != null) {
+          writer.close();
+        }
+      }
+      range.commit(null, digest, true);
+      journal.save();
+    }
+
+    private File sstFile(ConvertJournal.Range range, int seq) {
+      return new File(sstDir, String.format("%04d-%06d.sst", range.getIndex(), seq));
+    }
+
+    /**
+     * The ranges do not overlap, the files go to the bottom level directly.
+     */
+    private void ingest() throws RocksDBException {
+      List<String> files = new ArrayList<>();
+      journal.getRanges().forEach(range -> range.getFiles()
+          .forEach(file -> files.add(new File(sstDir, file).getPath())));
+      try (RocksDB db = DBUtils.newRocksDb(dstDbPath);
+           IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions()) {
+        if (!files.isEmpty()) {
+          logger.info("ingest database {} start, {} files", this.dbName, files.size());
+          ingestOptions.setMoveFiles(true);
+          db.ingestExternalFile(files, ingestOptions);
+          logger.info("ingest database {} end", this.dbName);
+        }
       }
     }
 
@@ -309,30 +621,44 @@ public class DbConvert implements Callable<Integer> {
       }
     }
 
-    private boolean check() throws RocksDBException {
-      if (!safe) {
+    /**
+     * Digest the ranges of the rocksdb in parallel,
+     * then compare with the digests of the write path.
+     *
+     * @return if all ranges match
+     */
+    private boolean check() throws RocksDBException, IOException {
+      if (!safe && !sst) {
         return true;
       }
-      try (
-          RocksDB rocks  = DBUtils.newRocksDbReadOnly(this.dstDbPath);
-          org.rocksdb.ReadOptions r = new org.rocksdb.ReadOptions().setFillCache(false);
-          RocksIterator rocksIterator = rocks.newIterator(r)) {
-
+      try (DBInterface rocks = new RocksDBImpl(
+          DBUtils.newRocksDbReadOnly(this.dstDbPath), dbName)) {
         // check
         logger.info("check database {} start", this.dbName);
-        for (rocksIterator.seekToFirst(); rocksIterator.isValid(); rocksIterator.next()) {
-          byte[] key = rocksIterator.key();
-          byte[] value = rocksIterator.value();
-          dstDbKeyCount++;
-          dstDbKeySum = byteArrayToIntWithOne(dstDbKeySum, key);
-          dstDbValueSum = byteArrayToIntWithOne(dstDbValueSum, value);
+        List<ConvertJournal.Range> ranges = journal.getRanges();
+        List<ChainedDigest> digests = DbTool.scan(rocks, ranges.stream()
+                .map(ConvertJournal.Range::getKeyRange).collect(Collectors.toList()),
+            DbTool.CPUS, (range, iterator) -> {
+              ChainedDigest digest = new ChainedDigest();
+              while (iterator.hasNext()) {
+                Map.Entry<byte[], byte[]> entry = iterator.next();
+                digest.update(entry.getKey(), entry.getValue());
+              }
+              return digest;
+            });
+        boolean result = true;
+        long dstDbKeyCount = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+          dstDbKeyCount += digests.get(i).getCount();
+          if (!ranges.get(i).matches(digests.get(i))) {
+            logger.error("Check database {} range {} mismatch, src {}, dst {}", dbName,
+                ranges.get(i).getKeyRange(), ranges.get(i).digestString(), digests.get(i));
+            result = false;
+          }
         }
-        logger.info("Check database {} end,dstDbKeyCount {}, dstDbKeySum {}, dstDbValueSum {},"
-                + "srcDbKeyCount {}, srcDbKeySum {}, srcDbValueSum {}",
-            dbName, dstDbKeyCount, dstDbKeySum, dstDbValueSum,
-            srcDbKeyCount, srcDbKeySum, srcDbValueSum);
-        return dstDbKeyCount == srcDbKeyCount && dstDbKeySum == srcDbKeySum
-            && dstDbValueSum == srcDbValueSum;
+        logger.info("Check database {} end, dstDbKeyCount {}, srcDbKeyCount {}, match {}",
+            dbName, dstDbKeyCount, srcDbKeyCount, result);
+        return result;
       }
     }
   }
@@ -350,11 +676,15 @@ public class DbConvert implements Callable<Integer> {
     return FileUtils.isExists(enginePath);
   }
 
-  private static long byteArrayToIntWithOne(long sum, byte[] b) {
-    for (byte oneByte : b) {
-      sum += oneByte;
+  private static long dirSize(File dir) {
+    File[] files = dir.listFiles();
+    long size = 0;
+    if (files != null) {
+      for (File file : files) {
+        size += file.isDirectory() ? dirSize(file) : file.length();
+      }
     }
-    return sum;
+    return size;
   }
 
 }
@@ -1,6 +1,7 @@
 package org.tron.plugins;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -11,8 +12,10 @@ import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import me.tongfei.progressbar.ProgressBar;
+import org.rocksdb.RocksDBException;
 import org.tron.plugins.utils.DBUtils;
 import org.tron.plugins.utils.FileUtils;
+import org.tron.plugins.utils.db.DbTool;
 import picocli.CommandLine;
 
 
@@ -93,17 +96,23 @@ public class DbCopy implements Callable<Integer> {
             Paths.get(src.getPath(), DBUtils.CHECKPOINT_DB_V2).toString(),
             Paths.get(dest.getPath(), DBUtils.CHECKPOINT_DB_V2).toString(),
             f.getName())));
-    List<String> fails = ProgressBar.wrap(services.stream(), "copy task").parallel().map(
-        dbCopier -> {
-          try {
-            return dbCopier.doCopy() ? null : dbCopier.name();
-          } catch (Exception e) {
-            logger.error("{}", e);
-            spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
-                .errorText(e.getMessage()));
-            return dbCopier.name();
-          }
-        }).filter(Objects::nonNull).collect(Collectors.toList());
+    List<String> fails;
+    try {
+      fails = ProgressBar.wrap(services.stream(), "copy task").parallel().map(
+          dbCopier -> {
+            try {
+              return dbCopier.doCopy() ? null : dbCopier.name();
+            } catch (Exception e) {
+              logger.error("{}", e);
+              spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+                  .errorText(e.getMessage()));
+              return dbCopier.name();
+            }
+          }).filter(Objects::nonNull).collect(Collectors.toList());
+    } finally {
+      // the rocksdb stores opened for their checkpoints
+      DbTool.close();
+    }
     // copy info.properties if lite need
     Arrays.stream(Objects.requireNonNull(src.listFiles()))
         .filter(File::isFile).forEach(f -> FileUtils.copy(Paths.get(src.toString(), f.getName()),
@@ -144,9 +153,12 @@ public class DbCopy implements Callable<Integer> {
         logger.info(" {} does not exist.", srcDb);
         return true;
       }
-      FileUtils.createDirIfNotExists(dstDir);
       logger.info("Copy database {} start", this.dbName);
-      FileUtils.copyDir(Paths.get(srcDir), Paths.get(dstDir), dbName);
+      try {
+        DbTool.copyStore(srcDir, dstDir, dbName);
+      } catch (IOException | RocksDBException e) {
+        throw new RuntimeException(e);
+      }
       logger.info("Copy database {} end", this.dbName);
       return true;
     }
@@ -0,0 +1,296 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.DBUtils;
+import org.tron.plugins.utils.MerkleBuilder;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DBIterator;
+import org.tron.plugins.utils.db.DbTool;
+import org.tron.plugins.utils.db.KeyRange;
+import org.tron.plugins.utils.db.RangeIterator;
+import picocli.CommandLine;
+
+@Slf4j(topic = "db-diff")
+@CommandLine.Command(name = "diff",
+    description = "compare two dbs by merkle roots of key ranges, print the keys that differ.",
+    exitCodeListHeading = "Exit Codes:%n",
+    exitCodeList = {
+        "0:no difference",
+        "1:dbs differ",
+        "n:diff failed,please check toolkit.log"})
+public class DbDiff implements Callable<Integer> {
+
+  // sub ranges of a mismatching range
+  private static final int FANOUT = 16;
+  // a mismatching range of at most this many keys is compared key by key
+  private static final int LEAF_KEYS = 1024;
+  private static final String CURRENT = "CURRENT";
+
+  @CommandLine.Spec
+  CommandLine.Model.CommandSpec spec;
+
+  @CommandLine.Parameters(index = "0",
+      description = "left database dir, or left store dir without --db")
+  private Path left;
+
+  @CommandLine.Parameters(index = "1",
+      description = "right database dir, or right store dir without --db")
+  private Path right;
+
+  @CommandLine.Option(names = {"--db"},
+      description = "db name to compare")
+  private List<String> dbs;
+
+  @CommandLine.Option(names = {"-t", "--threads"}, defaultValue = "1",
+      description = "hash threads of each db. Default: ${DEFAULT-VALUE}")
+  private int threads;
+
+  @CommandLine.Option(names = {"-h", "--help"}, help = true, description = "display a help message")
+  private boolean help;
+
+  @Override
+  public Integer call() throws Exception {
+    if (help) {
+      spec.commandLine().usage(System.out);
+      return 0;
+    }
+    for (Path path : Arrays.asList(left, right)) {
+      if (!path.toFile().exists()) {
+        logger.info(" {} does not exist.", path);
+        spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+            .errorText(String.format("%s does not exist.", path)));
+        return 404;
+      }
+    }
+    List<Pair> pairs = new ArrayList<>();
+    if (dbs == null || dbs.isEmpty()) {
+      if (!isStore(left.toFile()) || !isStore(right.toFile())) {
+        logger.info("Specify at least one database: --db dbName, or two store dirs.");
+        spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+            .errorText("Specify at least one database: --db dbName, or two store dirs."));
+        return 404;
+      }
+      Path leftStore = left.toAbsolutePath();
+      Path rightStore = right.toAbsolutePath();
+      pairs.add(new Pair(leftStore.getParent(), leftStore.getFileName().toString(),
+          rightStore.getParent(), rightStore.getFileName().toString()));
+    } else {
+      for (String name : dbs) {
+        for (Path path : Arrays.asList(left, right)) {
+          if (!isStore(path.resolve(name).toFile())) {
+            logger.info("{} is not a database.", path.resolve(name));
+            spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+                .errorText(String.format("%s is not a database.", path.resolve(name))));
+            return 404;
+          }
+        }
+        pairs.add(new Pair(left, name, right, name));
+      }
+    }
+    int code = 0;
+    for (Pair pair : pairs) {
+      if (pair.isSameStore()) {
+        // a store is not opened twice, the second open would fail on its lock
+        logger.info("db: {}, same store {}, no difference.", pair.leftName,
+            pair.leftDir.resolve(pair.leftName));
+        spec.commandLine().getOut().format("db: %s, same store %s, no difference.",
+            pair.leftName, pair.leftDir.resolve(pair.leftName)).println();
+        continue;
+      }
+      try (DBInterface leftDb = DbTool.getDB(pair.leftDir, pair.leftName);
+           DBInterface rightDb = DbTool.getDB(pair.rightDir, pair.rightName)) {
+        Stats stats = diff(pair.leftName, leftDb, rightDb);
+        logger.info("db: {}, {}", pair.leftName, stats);
+        spec.commandLine().getOut().format("db: %s, %s", pair.leftName, stats).println();
+        if (stats.differ() > 0) {
+          code = 1;
+        }
+      } catch (RocksDBException | IOException | RuntimeException e) {
+        logger.error("diff db {} fail", pair.leftName, e);
+        spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+            .errorText(String.format("db: %s,fail: %s", pair.leftName, e.getMessage())));
+        return 2;
+      }
+    }
+    return code;
+  }
+
+  /**
+   * The key ranges of the left db are hashed on both sides, a range of the same root is
+   * skipped unread, a mismatching one is split at the keys sampled while hashing it and
+   * descended into, until it is small enough to compare key by key. A few differing keys
+   * in a large db cost one hash pass and the hashes of the few ranges holding them.
+   */
+  private Stats diff(String name, DBInterface leftDb, DBInterface rightDb) throws IOException {
+    Stats stats = new Stats();
+    // custom comparator, bytewise sub ranges do not apply
+    int fanout = DBUtils.MARKET_PAIR_PRICE_TO_ORDER.equalsIgnoreCase(name) ? 0 : FANOUT;
+    descend(name, leftDb, rightDb, DbTool.splitRanges(leftDb, threads * FANOUT), fanout,
+        stats);
+    return stats;
+  }
+
+  private void descend(String name, DBInterface leftDb, DBInterface rightDb,
+                       List<KeyRange> ranges, int fanout, Stats stats) throws IOException {
+    List<RangeHash> lefts = DbTool.scan(leftDb, ranges, threads,
+        (range, iterator) -> RangeHash.of(iterator, fanout));
+    List<RangeHash> rights = DbTool.scan(rightDb, ranges, threads,
+        (range, iterator) -> RangeHash.of(iterator, fanout));
+    stats.ranges += ranges.size();
+    for (int i = 0; i < ranges.size(); i++) {
+      RangeHash l = lefts.get(i);
+      RangeHash r = rights.get(i);
+      if (l.count == r.count && Arrays.equals(l.root, r.root)) {
+        continue;
+      }
+      // split at the keys of the larger side
+      List<KeyRange> children = (l.count >= r.count ? l : r).split(ranges.get(i));
+      if (Math.max(l.count, r.count) <= LEAF_KEYS || children.size() < 2) {
+        compare(name, leftDb, rightDb, ranges.get(i), stats);
+      } else {
+        descend(name, leftDb, rightDb, children, fanout, stats);
+      }
+    }
+  }
+
+  /**
+   * Print the keys of the range that differ, by lookups in the other db, so the order of a
+   * custom comparator does not matter: first the keys only in left or changed, then the
+   * keys only in right.
+   */
+  private void compare(String name, DBInterface leftDb, DBInterface rightDb, KeyRange range,
+                       Stats stats) throws IOException {
+    PrintWriter out = spec.commandLine().getOut();
+    try (DBIterator iterator = new RangeIterator(leftDb.iterator(), range)) {
+      iterator.seekToFirst();
+      while (iterator.hasNext()) {
+        Map.Entry<byte[], byte[]> entry = iterator.next();
+        byte[] value = rightDb.get(entry.getKey());
+        if (value == null) {
+          out.format("%s - %s", name, ByteArray.toHexString(entry.getKey())).println();
+          stats.onlyLeft++;
+        } else if (!Arrays.equals(value, entry.getValue())) {
+          out.format("%s ~ %s", name, ByteArray.toHexString(entry.getKey())).println();
+          stats.changed++;
+        }
+      }
+    }
+    try (DBIterator iterator = new RangeIterator(rightDb.iterator(), range)) {
+      iterator.seekToFirst();
+      while (iterator.hasNext()) {
+        Map.Entry<byte[], byte[]> entry = iterator.next();
+        if (leftDb.get(entry.getKey()) == null) {
+          out.format("%s + %s", name, ByteArray.toHexString(entry.getKey())).println();
+          stats.onlyRight++;
+        }
+      }
+    }
+    out.flush();
+  }
+
+  private static boolean isStore(File dir) {
+    return new File(dir, CURRENT).exists();
+  }
+
+  /**
+   * Root and key count of one range, with the keys to split it at, evenly spaced: a key
+   * is sampled every stride keys, when 2 * fanout are sampled every other one is dropped
+   * and the stride doubles, so one pass keeps at most 2 * fanout keys whatever the size.
+   */
+  private static class RangeHash {
+    private final long count;
+    private final byte[] root;
+    private final List<byte[]> bounds;
+
+    private RangeHash(long count, byte[] root, List<byte[]> bounds) {
+      this.count = count;
+      this.root = root;
+      this.bounds = bounds;
+    }
+
+    private static RangeHash of(DBIterator iterator, int fanout) {
+      MerkleBuilder builder = new MerkleBuilder();
+      List<byte[]> bounds = new ArrayList<>();
+      long stride = 1;
+      while (iterator.hasNext()) {
+        Map.Entry<byte[], byte[]> entry = iterator.next();
+        long index = builder.getCount();
+        if (fanout > 0 && index > 0 && index % stride == 0) {
+          bounds.add(entry.getKey());
+          if (bounds.size() == 2 * fanout) {
+            List<byte[]> kept = new ArrayList<>(fanout);
+            for (int i = 1; i < bounds.size(); i += 2) {
+              kept.add(bounds.get(i));
+            }
+            bounds = kept;
+            stride *= 2;
+          }
+        }
+        builder.add(entry.getKey(), entry.getValue());
+      }
+      return new RangeHash(builder.getCount(), builder.root().getBytes(), bounds);
+    }
+
+    private List<KeyRange> split(KeyRange range) {
+      if (bounds.isEmpty()) {
+        return Collections.singletonList(range);
+      }
+      List<KeyRange> ranges = new ArrayList<>(bounds.size() + 1);
+      byte[] start = range.getStart();
+      for (byte[] bound : bounds) {
+        ranges.add(new KeyRange(start, bound));
+        start = bound;
+      }
+      ranges.add(new KeyRange(start, range.getEnd()));
+      return ranges;
+    }
+  }
+
+  private static class Pair {
+    private final Path leftDir;
+    private final String leftName;
+    private final Path rightDir;
+    private final String rightName;
+
+    private Pair(Path leftDir, String leftName, Path rightDir, String rightName) {
+      this.leftDir = leftDir;
+      this.leftName = leftName;
+      this.rightDir = rightDir;
+      this.rightName = rightName;
+    }
+
+    private boolean isSameStore() throws IOException {
+      return leftDir.resolve(leftName).toRealPath()
+          .equals(rightDir.resolve(rightName).toRealPath());
+    }
+  }
+
+  private static class Stats {
+    private long ranges;
+    private long onlyLeft;
+    private long onlyRight;
+    private long changed;
+
+    private long differ() {
+      return onlyLeft + onlyRight + changed;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d ranges hashed, %d keys differ: %d only in left,"
+          + " %d only in right, %d changed", ranges, differ(), onlyLeft, onlyRight, changed);
+    }
+  }
+}
@@ -66,6 +66,7 @@ import org.tron.core.capsule.StorageRowCapsule;
 import org.tron.core.capsule.WitnessCapsule;
 import org.tron.plugins.utils.Constant;
 import org.tron.plugins.utils.FileUtils;
+import org.tron.plugins.utils.db.BatchWriter;
 import org.tron.plugins.utils.db.DBInterface;
 import org.tron.plugins.utils.db.DBIterator;
 import org.tron.plugins.utils.db.DbTool;
@@ -161,9 +162,11 @@ public class DbFork implements Callable<Integer> {
       logger.info("Erase the previous witnesses and active witnesses.");
       spec.commandLine().getOut().println("Erase the previous witnesses and active witnesses.");
       witnessScheduleStore.delete(ACTIVE_WITNESSES);
-      DBIterator iterator = witnessStore.iterator();
-      for (iterator.seekToFirst(); iterator.valid(); iterator.next()) {
-        witnessStore.delete(iterator.getKey());
+      try (DBIterator iterator = witnessStore.iterator();
+           BatchWriter witnessWriter = new BatchWriter(witnessStore)) {
+        for (iterator.seekToFirst(); iterator.valid(); iterator.next()) {
+          witnessWriter.delete(iterator.getKey());
+        }
       }
     } else {
       logger.warn("Keep the previous witnesses and active witnesses.");
@@ -184,21 +187,23 @@ public class DbFork implements Callable<Integer> {
       }
 
       List<ByteString> witnessList = new ArrayList<>();
-      witnesses.stream().forEach(
-          w -> {
-            ByteString address = ByteString.copyFrom(
-                Commons.decodeFromBase58Check(w.getString(WITNESS_ADDRESS)));
-            WitnessCapsule witness = new WitnessCapsule(address);
-            witness.setIsJobs(true);
-            if (w.hasPath(WITNESS_VOTE) && w.getLong(WITNESS_VOTE) > 0) {
-              witness.setVoteCount(w.getLong(WITNESS_VOTE));
-            }
-            if (w.hasPath(WITNESS_URL)) {
-              witness.setUrl(w.getString(WITNESS_URL));
-            }
-            witnessStore.put(address.toByteArray(), witness.getData());
-            witnessList.add(witness.getAddress());
-          });
+      try (BatchWriter witnessWriter = new BatchWriter(witnessStore)) {
+        witnesses.stream().forEach(
+            w -> {
+              ByteString address = ByteString.copyFrom(
+                  Commons.decodeFromBase58Check(w.getString(WITNESS_ADDRESS)));
+              WitnessCapsule witness = new WitnessCapsule(address);
+              witness.setIsJobs(true);
+              if (w.hasPath(WITNESS_VOTE) && w.getLong(WITNESS_VOTE) > 0) {
+                witness.setVoteCount(w.getLong(WITNESS_VOTE));
+              }
+              if (w.hasPath(WITNESS_URL)) {
+                witness.setUrl(w.getString(WITNESS_URL));
+              }
+              witnessWriter.put(address.toByteArray(), witness.getData());
+              witnessList.add(witness.getAddress());
+            });
+      }
 
       witnessList.sort(Comparator.comparingLong((ByteString b) ->
           new WitnessCapsule(witnessStore.get(b.toByteArray())).getVoteCount())
@@ -227,66 +232,69 @@ public class DbFork implements Callable<Integer> {
         spec.commandLine().getOut().println("no account listed in the config.");
       }
 
-      accounts.stream().forEach(
-          a -> {
-            byte[] address = Commons.decodeFromBase58Check(a.getString(ACCOUNT_ADDRESS));
-            byte[] value = accountStore.get(address);
-            Account account = null;
-            try {
-              account = ArrayUtils.isEmpty(value) ? null : Account.parseFrom(value);
-            } catch (InvalidProtocolBufferException e) {
-              e.printStackTrace();
-              System.exit(-1);
-            }
-
-            if (Objects.isNull(account)) {
-              ByteString byteAddress = ByteString.copyFrom(
-                  Commons.decodeFromBase58Check(a.getString(ACCOUNT_ADDRESS)));
-              account = Account.newBuilder().setAddress(byteAddress).build();
-            }
-            AccountCapsule accountCapsule = new AccountCapsule(account);
-
-            if (a.hasPath(ACCOUNT_BALANCE) && a.getLong(ACCOUNT_BALANCE) > 0) {
-              accountCapsule.setBalance(a.getLong(ACCOUNT_BALANCE));
-            }
-            if (a.hasPath(ACCOUNT_NAME)) {
-              accountCapsule.setAccountName(
-                  ByteArray.fromString(a.getString(ACCOUNT_NAME)));
-            }
-            if (a.hasPath(ACCOUNT_TYPE)) {
-              accountCapsule.updateAccountType(
-                  AccountType.valueOf(a.getString(ACCOUNT_TYPE)));
-            }
-
-            if (a.hasPath(ACCOUNT_OWNER)) {
-              byte[] owner = Commons.decodeFromBase58Check(a.getString(ACCOUNT_OWNER));
-              Permission ownerPermission = AccountCapsule
-                  .createDefaultOwnerPermission(ByteString.copyFrom(owner));
-              accountCapsule.updatePermissions(ownerPermission, null, null);
-            }
-
-            if (a.hasPath(ACCOUNT_TRC10_ID) && a.hasPath(ACCOUNT_TRC10_BALANCE)
-                && a.getLong(ACCOUNT_TRC10_BALANCE) > 0) {
-              String trc10Id = a.getString(ACCOUNT_TRC10_ID);
-              if (assetIssueV2Store.get(ByteArray.fromString(trc10Id)) != null) {
-                if (accountCapsule.getAssetOptimized()) {
-                  byte[] k = Bytes.concat(address, ByteArray.fromString(trc10Id));
-                  accountAssetStore.put(k, Longs.toByteArray(a.getLong(ACCOUNT_TRC10_BALANCE)));
+      try (BatchWriter accountWriter = new BatchWriter(accountStore);
+           BatchWriter accountAssetWriter = new BatchWriter(accountAssetStore)) {
+        accounts.stream().forEach(
+            a -> {
+              byte[] address = Commons.decodeFromBase58Check(a.getString(ACCOUNT_ADDRESS));
+              byte[] value = accountWriter.get(address);
+              Account account = null;
+              try {
+                account = ArrayUtils.isEmpty(value) ? null : Account.parseFrom(value);
+              } catch (InvalidProtocolBufferException e) {
+                e.printStackTrace();
+                System.exit(-1);
+              }
+
+              if (Objects.isNull(account)) {
+                ByteString byteAddress = ByteString.copyFrom(
+                    Commons.decodeFromBase58Check(a.getString(ACCOUNT_ADDRESS)));
+                account = Account.newBuilder().setAddress(byteAddress).build();
+              }
+              AccountCapsule accountCapsule = new AccountCapsule(account);
+
+              if (a.hasPath(ACCOUNT_BALANCE) && a.getLong(ACCOUNT_BALANCE) > 0) {
+                accountCapsule.setBalance(a.getLong(ACCOUNT_BALANCE));
+              }
+              if (a.hasPath(ACCOUNT_NAME)) {
+                accountCapsule.setAccountName(
+                    ByteArray.fromString(a.getString(ACCOUNT_NAME)));
+              }
+              if (a.hasPath(ACCOUNT_TYPE)) {
+                accountCapsule.updateAccountType(
+                    AccountType.valueOf(a.getString(ACCOUNT_TYPE)));
+              }
+
+              if (a.hasPath(ACCOUNT_OWNER)) {
+                byte[] owner = Commons.decodeFromBase58Check(a.getString(ACCOUNT_OWNER));
+                Permission ownerPermission = AccountCapsule
+                    .createDefaultOwnerPermission(ByteString.copyFrom(owner));
+                accountCapsule.updatePermissions(ownerPermission, null, null);
+              }
+
+              if (a.hasPath(ACCOUNT_TRC10_ID) && a.hasPath(ACCOUNT_TRC10_BALANCE)
+                  && a.getLong(ACCOUNT_TRC10_BALANCE) > 0) {
+                String trc10Id = a.getString(ACCOUNT_TRC10_ID);
+                if (assetIssueV2Store.get(ByteArray.fromString(trc10Id)) != null) {
+                  if (accountCapsule.getAssetOptimized()) {
+                    byte[] k = Bytes.concat(address, ByteArray.fromString(trc10Id));
+                    accountAssetWriter.put(k, Longs.toByteArray(a.getLong(ACCOUNT_TRC10_BALANCE)));
+                  } else {
+                    Map<String, Long> assetMapV2 = new HashMap<>(account.getAssetV2Map());
+                    assetMapV2.put(trc10Id, a.getLong(ACCOUNT_TRC10_BALANCE));
+                    accountCapsule.clearAssetV2();
+                    accountCapsule.addAssetMapV2(assetMapV2);
+                  }
                 } else {
-                  Map<String, Long> assetMapV2 = new HashMap<>(account.getAssetV2Map());
-                  assetMapV2.put(trc10Id, a.getLong(ACCOUNT_TRC10_BALANCE));
-                  accountCapsule.clearAssetV2();
-                  accountCapsule.addAssetMapV2(assetMapV2);
+                  logger.info("TRC10: {} not exists in the database.", trc10Id);
+                  spec.commandLine().getOut()
+                      .format("TRC10: %s not exists in the database.", trc10Id).println();
                 }
-              } else {
-                logger.info("TRC10: {} not exists in the database.", trc10Id);
-                spec.commandLine().getOut().format("TRC10: %s not exists in the database.", trc10Id)
-                    .println();
               }
-            }
 
-            accountStore.put(address, accountCapsule.getData());
-          });
+              accountWriter.put(address, accountCapsule.getData());
+            });
+      }
       logger.info("{} accounts have been modified.", accounts.size());
       spec.commandLine().getOut().format("%d accounts have been modified.", accounts.size())
           .println();
@@ -309,61 +317,63 @@ public class DbFork implements Callable<Integer> {
 
       AtomicInteger cnt = new AtomicInteger();
 
-      trc20Contracts.stream().forEach(
-          contract -> {
-            byte[] contractAddress = Commons
-                .decodeFromBase58Check(contract.getString(TRC20_CONTRACT_ADDRESS));
-            if (contractStore.get(contractAddress) == null) {
-              spec.commandLine().getErr().format("TRC20 contract: %s not exists in the database.",
-                  contract.getString(TRC20_CONTRACT_ADDRESS)).println();
-              return;
-            }
-
-            SmartContract smartContract;
-            try {
-              smartContract = SmartContract.parseFrom(contractStore.get(contractAddress));
-            } catch (InvalidProtocolBufferException e) {
-              e.printStackTrace();
-              return;
-            }
-
-            int balancesSlotPosition = 0;
-            if (contract.getInt(TRC20_BALANCES_POSITION) > 0) {
-              balancesSlotPosition = contract.getInt(TRC20_BALANCES_POSITION);
-            }
-            byte[] addressWithPrefix = Commons
-                .decodeFromBase58Check(contract.getString(TRC20_ACCOUNT));
-            byte[] address = ByteArray.subArray(addressWithPrefix, 1, 21);
-            String paddedAddress = String
-                .format("%064x", new BigInteger(ByteArray.toHexString(address), 16));
-            String paddedSlot = String.format("%064x", balancesSlotPosition);
-            byte[] contractKey = Hash.sha3(ByteArray.fromHexString(
-                paddedAddress + paddedSlot));
-
-            byte[] addressHash;
-            byte[] trxHash = smartContract.getTrxHash().toByteArray();
-            if (ByteUtil.isNullOrZeroArray(trxHash)) {
-              addressHash = Hash.sha3(contractAddress);
-            } else {
-              addressHash = Hash.sha3(ByteUtil.merge(contractAddress, trxHash));
-            }
-
-            int contractVersion = smartContract.getVersion();
-            if (contractVersion == 1) {
-              contractKey = Hash.sha3(contractKey);
-            }
-            byte[] rowKey = new byte[contractKey.length];
-            arraycopy(addressHash, 0, rowKey, 0, 16);
-            arraycopy(contractKey, 16, rowKey, 16, 16);
-
-            String paddedBalance = String
-                .format("%064x", new BigInteger(contract.getString(TRC20_BALANCE), 10));
-            byte[] rowValue = ByteArray.fromHexString(paddedBalance);
-            StorageRowCapsule storageRowCapsule = new StorageRowCapsule(rowKey, rowValue);
-
-            storageRowStore.put(rowKey, storageRowCapsule.getData());
-            cnt.getAndIncrement();
-          });
+      try (BatchWriter storageRowWriter = new BatchWriter(storageRowStore)) {
+        trc20Contracts.stream().forEach(
+            contract -> {
+              byte[] contractAddress = Commons
+                  .decodeFromBase58Check(contract.getString(TRC20_CONTRACT_ADDRESS));
+              if (contractStore.get(contractAddress) == null) {
+                spec.commandLine().getErr().format("TRC20 contract: %s not exists in the database.",
+                    contract.getString(TRC20_CONTRACT_ADDRESS)).println();
+                return;
+              }
+
+              SmartContract smartContract;
+              try {
+                smartContract = SmartContract.parseFrom(contractStore.get(contractAddress));
+              } catch (InvalidProtocolBufferException e) {
+                e.printStackTrace();
+                return;
+              }
+
+              int balancesSlotPosition = 0;
+              if (contract.getInt(TRC20_BALANCES_POSITION) > 0) {
+                balancesSlotPosition = contract.getInt(TRC20_BALANCES_POSITION);
+              }
+              byte[] addressWithPrefix = Commons
+                  .decodeFromBase58Check(contract.getString(TRC20_ACCOUNT));
+              byte[] address = ByteArray.subArray(addressWithPrefix, 1, 21);
+              String paddedAddress = String
+                  .format("%064x", new BigInteger(ByteArray.toHexString(address), 16));
+              String paddedSlot = String.format("%064x", balancesSlotPosition);
+              byte[] contractKey = Hash.sha3(ByteArray.fromHexString(
+                  paddedAddress + paddedSlot));
+
+              byte[] addressHash;
+              byte[] trxHash = smartContract.getTrxHash().toByteArray();
+              if (ByteUtil.isNullOrZeroArray(trxHash)) {
+                addressHash = Hash.sha3(contractAddress);
+              } else {
+                addressHash = Hash.sha3(ByteUtil.merge(contractAddress, trxHash));
+              }
+
+              int contractVersion = smartContract.getVersion();
+              if (contractVersion == 1) {
+                contractKey = Hash.sha3(contractKey);
+              }
+              byte[] rowKey = new byte[contractKey.length];
+              arraycopy(addressHash, 0, rowKey, 0, 16);
+              arraycopy(contractKey, 16, rowKey, 16, 16);
+
+              String paddedBalance = String
+                  .format("%064x", new BigInteger(contract.getString(TRC20_BALANCE), 10));
+              byte[] rowValue = ByteArray.fromHexString(paddedBalance);
+              StorageRowCapsule storageRowCapsule = new StorageRowCapsule(rowKey, rowValue);
+
+              storageRowWriter.put(rowKey, storageRowCapsule.getData());
+              cnt.getAndIncrement();
+            });
+      }
       logger.info("{} TRC20 contracts have been modified.", cnt.get());
       spec.commandLine().getOut()
           .format("%d TRC20 contracts have been modified.", cnt.get())
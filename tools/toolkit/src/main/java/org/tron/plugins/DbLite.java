@@ -2,33 +2,50 @@ package org.tron.plugins;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.primitives.Bytes;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-import java.util.stream.LongStream;
 import lombok.extern.slf4j.Slf4j;
 import me.tongfei.progressbar.ProgressBar;
 import org.rocksdb.RocksDBException;
 import org.tron.plugins.utils.ByteArray;
 import org.tron.plugins.utils.DBUtils;
 import org.tron.plugins.utils.FileUtils;
+import org.tron.plugins.utils.db.BatchWriter;
 import org.tron.plugins.utils.db.DBInterface;
 import org.tron.plugins.utils.db.DBIterator;
 import org.tron.plugins.utils.db.DbTool;
+import org.tron.plugins.utils.db.KeyRange;
 import org.tron.protos.Protocol;
 import picocli.CommandLine;
 
@@ -44,11 +61,17 @@ public class DbLite implements Callable<Integer> {
   private static final long START_TIME = System.currentTimeMillis() / 1000;
 
   private static long RECENT_BLKS = 65536;
+  private static final long FILL_CHUNK_BLKS = 1024;
 
   private static final String SNAPSHOT_DIR_NAME = "snapshot";
   private static final String HISTORY_DIR_NAME = "history";
   private static final String INFO_FILE_NAME = "info.properties";
   private static final String BACKUP_DIR_PREFIX = ".bak_";
+  private static final String STAGING_DIR_PREFIX = ".staging_";
+  private static final String TRIM_TRANS_TASK = "trim.trans";
+  private static final String MERGE_TRANS_TASK = "merge.trans";
+  private static final String STDIO = "-";
+  private static final int ARCHIVE_BUFFER = 1024 * 1024;
   private static final String CHECKPOINT_DB = "tmp";
   private static final String BLOCK_DB_NAME = "block";
   private static final String BLOCK_INDEX_DB_NAME = "block-index";
@@ -65,9 +88,11 @@ public class DbLite implements Callable<Integer> {
       TRANSACTION_RET_DB_NAME,
       TRANSACTION_HISTORY_DB_NAME);
 
-  enum Operate { split, merge }
+  enum Operate { split, merge, unpack, delta, patch }
 
-  enum Type { snapshot, history }
+  enum Type { snapshot, history, all }
+
+  private final Map<String, CheckpointOverlay> overlays = new ConcurrentHashMap<>();
 
   @CommandLine.Spec
   CommandLine.Model.CommandSpec spec;
@@ -100,13 +125,44 @@ public class DbLite implements Callable<Integer> {
       description = "when operation is `split`,"
           + "`dataset-path` is the path that store the `snapshot` or `history`,"
           + "when operation is `split`,"
-          + "`dataset-path` is the `history` data path.",
+          + "`dataset-path` is the `history` data path,"
+          + "when operation is `unpack`,"
+          + "`dataset-path` is the archive to import, `-` for stdin.",
       order = 4)
   private String datasetPath;
 
   @CommandLine.Option(
-      names = {"--help", "-h"},
+      names = {"--archive"},
+      description = "only used with operate=split: stream the dataset into one archive"
+          + " at this path instead of the dataset dir, `-` for stdout.",
       order = 5)
+  private String archive;
+
+  @CommandLine.Option(
+      names = {"--segment-size"},
+      description = "only used with operate=split and type=history: split the history into"
+          + " segments of this many blocks, the existing complete segments are kept."
+          + " Default: 0, one history",
+      order = 6)
+  private long segmentSize;
+
+  @CommandLine.Option(
+      names = {"--from-block"},
+      description = "only used with operate=merge of a segmented history: merge the segments"
+          + " from the one holding this block up to the snapshot. Default: 0, all",
+      order = 7)
+  private long fromBlock;
+
+  @CommandLine.Option(
+      names = {"--base"},
+      description = "only used with operate=delta: the previous snapshot the delta of"
+          + " `fn-data-path` is taken against.",
+      order = 8)
+  private String base;
+
+  @CommandLine.Option(
+      names = {"--help", "-h"},
+      order = 9)
   private boolean help;
 
 
@@ -117,16 +173,34 @@ public class DbLite implements Callable<Integer> {
       return 0;
     }
     try {
+      if (segmentSize < 0 || (segmentSize > 0
+          && (Operate.split != operate || Type.history != type || archive != null))) {
+        throw new IllegalArgumentException(
+            "--segment-size must be positive and only used with -o split -t history.");
+      }
       switch (this.operate) {
         case split:
-          if (Type.snapshot == this.type) {
-            generateSnapshot(fnDataPath, datasetPath);
-          } else if (Type.history == type) {
-            generateHistory(fnDataPath, datasetPath);
+          if (archive != null) {
+            splitToArchive();
+          } else {
+            generate(fnDataPath, datasetPath);
           }
           break;
         case merge:
-          completeHistoryData(datasetPath, fnDataPath);
+          if (HistorySegments.exists(datasetPath)) {
+            mergeHistorySegments(datasetPath, fnDataPath);
+          } else {
+            completeHistoryData(datasetPath, fnDataPath);
+          }
+          break;
+        case unpack:
+          importArchive(datasetPath, fnDataPath);
+          break;
+        case delta:
+          createDelta(base, fnDataPath, datasetPath);
+          break;
+        case patch:
+          applyDelta(datasetPath, fnDataPath);
           break;
         default:
       }
@@ -139,7 +213,160 @@ public class DbLite implements Callable<Integer> {
       return 1;
     } finally {
       DbTool.close();
+      overlays.clear();
+    }
+  }
+
+  private void generate(String sourceDir, String datasetDir) {
+    if (Type.snapshot == this.type) {
+      generateSnapshot(sourceDir, datasetDir);
+    } else if (Type.history == type && segmentSize > 0) {
+      generateHistorySegments(sourceDir, datasetDir);
+    } else if (Type.history == type) {
+      generateHistory(sourceDir, datasetDir);
+    } else if (Type.all == type) {
+      generateSnapshotAndHistory(sourceDir, datasetDir);
+    }
+  }
+
+  /**
+   * Create the datasets in a staging dir under the dataset path, stream them into one
+   * archive, then drop the staging dir. Table files are hard linked into the staging dir,
+   * so it only takes the space of the files the split changes.
+   */
+  private void splitToArchive() throws IOException {
+    Path staging = Paths.get(datasetPath, STAGING_DIR_PREFIX + START_TIME);
+    List<String> datasets = Type.all == type
+        ? Arrays.asList(SNAPSHOT_DIR_NAME, HISTORY_DIR_NAME)
+        : Collections.singletonList(Type.snapshot == type ? SNAPSHOT_DIR_NAME : HISTORY_DIR_NAME);
+    boolean toStdout = STDIO.equals(archive);
+    PrintStream stdout = System.out;
+    PrintWriter out = spec.commandLine().getOut();
+    if (toStdout) {
+      // the archive owns stdout, logs and messages go to stderr
+      System.setOut(System.err);
+      spec.commandLine().setOut(new PrintWriter(System.err, true));
+    }
+    try {
+      generate(fnDataPath, staging.toString());
+      // the stores must be closed before their files are packed
+      DbTool.close();
+      overlays.clear();
+      for (String dataset : datasets) {
+        if (!staging.resolve(dataset).resolve(INFO_FILE_NAME).toFile().exists()) {
+          throw new IllegalStateException(String.format("Create %s failed.", dataset));
+        }
+      }
+      logger.info("Begin to pack {} to {}.", datasets, archive);
+      spec.commandLine().getOut().format("Begin to pack %s to %s.", datasets, archive)
+          .println();
+      long start = System.currentTimeMillis();
+      if (toStdout) {
+        // packing flushes the stream, stdout itself is left open
+        DatasetArchive.pack(staging, datasets, new BufferedOutputStream(
+            new FileOutputStream(FileDescriptor.out), ARCHIVE_BUFFER), DbTool.CPUS,
+            DatasetArchive.CHUNK_SIZE);
+      } else {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(archive),
+            ARCHIVE_BUFFER)) {
+          DatasetArchive.pack(staging, datasets, os, DbTool.CPUS, DatasetArchive.CHUNK_SIZE);
+        }
+      }
+      long during = (System.currentTimeMillis() - start) / 1000;
+      logger.info("Pack {} finished, take {} s.", datasets, during);
+      spec.commandLine().getOut().format("Pack %s finished, take %d s.", datasets, during)
+          .println();
+    } finally {
+      System.setOut(stdout);
+      spec.commandLine().setOut(out);
+      FileUtils.deleteDir(staging.toFile());
+    }
+  }
+
+  /**
+   * Import a dataset archive into a database dir, verifying the checksums as it is unpacked.
+   *
+   * @param archive the archive path, `-` for stdin
+   * @param databaseDir the database dir to create
+   */
+  public void importArchive(String archive, String databaseDir) throws IOException {
+    logger.info("Start import {} to {}.", archive, databaseDir);
+    spec.commandLine().getOut().format("Start import %s to %s.", archive, databaseDir)
+        .println();
+    File dest = new File(databaseDir);
+    String[] children = dest.list();
+    if (dest.exists() && (children == null || children.length > 0)) {
+      throw new RuntimeException(String.format(
+          "destDir: %s is already exist, please remove it first", databaseDir));
+    }
+    long start = System.currentTimeMillis();
+    List<String> datasets;
+    try (InputStream in = new BufferedInputStream(STDIO.equals(archive)
+        ? System.in : new FileInputStream(archive), ARCHIVE_BUFFER)) {
+      datasets = DatasetArchive.unpack(in, dest.toPath());
+    } catch (IOException | RuntimeException e) {
+      // never leave a partial import behind
+      FileUtils.deleteDir(dest);
+      throw e;
     }
+    long during = (System.currentTimeMillis() - start) / 1000;
+    logger.info("Import {} finished, take {} s.", datasets, during);
+    spec.commandLine().getOut().format("Import %s finished, take %d s.", datasets, during)
+        .println();
+  }
+
+  /**
+   * Create the delta of a snapshot against the previous snapshot of the same source.
+   *
+   * @param baseDir the previous snapshot
+   * @param snapshotDir the new snapshot
+   * @param deltaDir the dir to write the delta
+   */
+  public void createDelta(String baseDir, String snapshotDir, String deltaDir)
+      throws IOException {
+    if (baseDir == null) {
+      throw new IllegalArgumentException("--base is required by operate=delta.");
+    }
+    for (String dir : Arrays.asList(baseDir, snapshotDir)) {
+      if (!Paths.get(dir, INFO_FILE_NAME).toFile().exists()) {
+        throw new FileNotFoundException(String.format("%s is not a snapshot.", dir));
+      }
+    }
+    File dest = new File(deltaDir);
+    String[] children = dest.list();
+    if (dest.exists() && (children == null || children.length > 0)) {
+      throw new RuntimeException(String.format(
+          "destDir: %s is already exist, please remove it first", deltaDir));
+    }
+    logger.info("Start create delta of {} against {}.", snapshotDir, baseDir);
+    spec.commandLine().getOut().format("Start create delta of %s against %s.", snapshotDir,
+        baseDir).println();
+    long start = System.currentTimeMillis();
+    SnapshotDelta.Stats stats = SnapshotDelta.create(Paths.get(baseDir), Paths.get(snapshotDir),
+        dest.toPath());
+    long during = (System.currentTimeMillis() - start) / 1000;
+    logger.info("Create delta finished, {}, take {} s.", stats, during);
+    spec.commandLine().getOut().format("Create delta finished, %s, take %d s.", stats, during)
+        .println();
+  }
+
+  /**
+   * Patch a database of the previous snapshot into the new snapshot by a delta.
+   *
+   * @param deltaDir the delta
+   * @param databaseDir the database of the previous snapshot
+   */
+  public void applyDelta(String deltaDir, String databaseDir) throws IOException {
+    logger.info("Start patch {} by {}.", databaseDir, deltaDir);
+    spec.commandLine().getOut().format("Start patch %s by %s.", databaseDir, deltaDir)
+        .println();
+    long start = System.currentTimeMillis();
+    SnapshotDelta.Stats stats = SnapshotDelta.apply(Paths.get(deltaDir),
+        Paths.get(databaseDir).toAbsolutePath().normalize());
+    long during = (System.currentTimeMillis() - start) / 1000;
+    logger.info("Patch finished, {}, take {} s.", stats, during);
+    spec.commandLine().getOut().format("Patch finished, %s, take %d s.", stats, during)
+        .println();
   }
 
   /**
@@ -160,7 +387,7 @@ public class DbLite implements Callable<Integer> {
       split(sourceDir, snapshotDir, snapshotDbs);
       mergeCheckpoint2Snapshot(sourceDir, snapshotDir);
       // write genesisBlock , latest recent blocks and trans
-      fillSnapshotBlockAndTransDb(sourceDir, snapshotDir);
+      fillSnapshotBlockAndTransDb(sourceDir, snapshotDir, getLatestBlockHeaderNum(sourceDir));
       // save min block to info
       generateInfoProperties(Paths.get(snapshotDir, INFO_FILE_NAME).toString(),
           getSecondBlock(snapshotDir));
@@ -209,6 +436,229 @@ public class DbLite implements Callable<Integer> {
     spec.commandLine().getOut().format("Create history finished, take %d s.", during).println();
   }
 
+  /**
+   * Create the snapshot and the history datasets in one pass.
+   * The checks, the latest block number and the checkpoint replay are shared.
+   * The archive dbs are copied first: a LevelDB source is copied file by file while open,
+   * so block, block-index and trans are not copied while the snapshot fill reads them.
+   * Then the snapshot dbs and the fill run concurrently with the history replay.
+   *
+   * @param sourceDir the original fullnode database dir,
+   *                  same with {storage.db.directory} in conf file.
+   * @param datasetDir the path that stores the snapshot and history datasets
+   */
+  public void generateSnapshotAndHistory(String sourceDir, String datasetDir) {
+    logger.info("Start create snapshot and history.");
+    spec.commandLine().getOut().println("Start create snapshot and history.");
+    long start = System.currentTimeMillis();
+    String snapshotDir = Paths.get(datasetDir, SNAPSHOT_DIR_NAME).toString();
+    String historyDir = Paths.get(datasetDir, HISTORY_DIR_NAME).toString();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      if (isLite(sourceDir)) {
+        throw new IllegalStateException(
+            String.format("Unavailable sourceDir: %s is not fullNode data.", sourceDir));
+      }
+      hasEnoughBlock(sourceDir);
+      long latestBlockNum = getLatestBlockHeaderNum(sourceDir);
+      List<String> snapshotDbs = getSnapshotDbs(sourceDir);
+      List<String> allDbs = Lists.newArrayList(snapshotDbs);
+      allDbs.addAll(archiveDbs);
+      CheckpointReplay replay = foldCheckpoint(sourceDir, allDbs);
+      // the overlay is loaded before the pipelines start, the fill only reads it
+      getCheckpointOverlay(sourceDir);
+      split(sourceDir, historyDir, archiveDbs);
+      Future<Void> snapshot = executor.submit(() -> {
+        split(sourceDir, snapshotDir, snapshotDbs);
+        if (replay != null) {
+          replay.apply(snapshotDir, snapshotDbs);
+        }
+        // write genesisBlock , latest recent blocks and trans
+        fillSnapshotBlockAndTransDb(sourceDir, snapshotDir, latestBlockNum);
+        // save min block to info
+        generateInfoProperties(Paths.get(snapshotDir, INFO_FILE_NAME).toString(),
+            getSecondBlock(snapshotDir));
+        return null;
+      });
+      Future<Void> history = executor.submit(() -> {
+        if (replay != null) {
+          replay.apply(historyDir, archiveDbs);
+        }
+        // save max block to info
+        generateInfoProperties(Paths.get(historyDir, INFO_FILE_NAME).toString(),
+            latestBlockNum);
+        return null;
+      });
+      waitFor(snapshot);
+      waitFor(history);
+    } catch (IOException | RocksDBException e) {
+      logger.error("Create snapshot and history failed, {}.", e.getMessage());
+      spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+          .stackTraceText(e));
+      return;
+    } finally {
+      executor.shutdownNow();
+    }
+    long during = (System.currentTimeMillis() - start) / 1000;
+    logger.info("Create snapshot and history finished, take {} s.", during);
+    spec.commandLine().getOut()
+        .format("Create snapshot and history finished, take %d s.", during).println();
+  }
+
+  /**
+   * Create the history dataset as block-range segments with a manifest.
+   * The complete segments of an existing manifest are kept, only the last partial
+   * segment and the new blocks are produced, so the history grows with the chain.
+   *
+   * @param sourceDir the original fullnode database dir,
+   *                  same with {storage.db.directory} in conf file.
+   * @param datasetDir the path that stores the segmented history dataset
+   */
+  public void generateHistorySegments(String sourceDir, String datasetDir) {
+    logger.info("Start create history segments of {} blocks.", segmentSize);
+    spec.commandLine().getOut().format("Start create history segments of %d blocks.",
+        segmentSize).println();
+    long start = System.currentTimeMillis();
+    String historyDir = Paths.get(datasetDir, HISTORY_DIR_NAME).toString();
+    try {
+      if (isLite(sourceDir)) {
+        throw new IllegalStateException(
+            String.format("Unavailable sourceDir: %s is not fullNode data.", sourceDir));
+      }
+      hasEnoughBlock(sourceDir);
+      long latestBlockNum = getLatestBlockHeaderNum(sourceDir);
+      String genesis = ByteArray.toHexString(getGenesisBlockHash(sourceDir));
+      File manifestFile = HistorySegments.fileOf(historyDir);
+      HistorySegments manifest = HistorySegments.load(manifestFile);
+      if (manifest == null) {
+        if (!FileUtils.createDirIfNotExists(historyDir)) {
+          throw new RuntimeException(String.format("create history dir %s failed", historyDir));
+        }
+        manifest = HistorySegments.create(manifestFile, segmentSize, genesis);
+      } else if (manifest.getSize() != segmentSize || !genesis.equals(manifest.getGenesis())) {
+        throw new IllegalStateException(String.format(
+            "Segments of %s are of another chain or size %d, please remove it first.",
+            historyDir, manifest.getSize()));
+      }
+      long next = manifest.nextBlock();
+      manifest.truncate(next);
+      for (long from = next; from <= latestBlockNum; from += segmentSize) {
+        HistorySegments.Segment segment = new HistorySegments.Segment(from,
+            Math.min(from + segmentSize - 1, latestBlockNum));
+        String segmentDir = Paths.get(historyDir, segment.getName()).toString();
+        // a segment left by an interrupted run is not in the manifest, produce it again
+        FileUtils.deleteDir(new File(segmentDir));
+        writeSegment(sourceDir, segmentDir, segment);
+        manifest.add(segment);
+      }
+      logger.info("History has {} segments up to block {}.", manifest.getSegments().size(),
+          latestBlockNum);
+    } catch (IOException | RocksDBException e) {
+      logger.error("Create history segments failed, {}.", e.getMessage());
+      spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+          .stackTraceText(e));
+      return;
+    }
+    long during = (System.currentTimeMillis() - start) / 1000;
+    logger.info("Create history segments finished, take {} s.", during);
+    spec.commandLine().getOut().format("Create history segments finished, take %d s.", during)
+        .println();
+  }
+
+  /**
+   * Write the archive dbs of the segment blocks, read from the source through the
+   * checkpoint overlay by chunks in parallel.
+   */
+  private void writeSegment(String sourceDir, String segmentDir,
+      HistorySegments.Segment segment) throws IOException, RocksDBException {
+    logger.info("Begin to write segment {}.", segment.getName());
+    CheckpointOverlay overlay = getCheckpointOverlay(sourceDir);
+    SourceStore blockIndexStore = new SourceStore(BLOCK_INDEX_DB_NAME,
+        DbTool.getDB(sourceDir, BLOCK_INDEX_DB_NAME), overlay);
+    SourceStore blockStore = new SourceStore(BLOCK_DB_NAME,
+        DbTool.getDB(sourceDir, BLOCK_DB_NAME), overlay);
+    SourceStore tranRetStore = new SourceStore(TRANSACTION_RET_DB_NAME,
+        DbTool.getDB(sourceDir, TRANSACTION_RET_DB_NAME), overlay);
+    SourceStore transStore = new SourceStore(TRANS_DB_NAME,
+        DbTool.getDB(sourceDir, TRANS_DB_NAME), overlay);
+    SourceStore historyStore = new SourceStore(TRANSACTION_HISTORY_DB_NAME,
+        DbTool.getDB(sourceDir, TRANSACTION_HISTORY_DB_NAME), overlay);
+    // keep engine same as source
+    DBInterface destBlockDb = DbTool.getDB(sourceDir, segmentDir, BLOCK_DB_NAME);
+    DBInterface destBlockIndexDb = DbTool.getDB(sourceDir, segmentDir, BLOCK_INDEX_DB_NAME);
+    DBInterface destTranRetDb = DbTool.getDB(sourceDir, segmentDir, TRANSACTION_RET_DB_NAME);
+    DBInterface destTransDb = DbTool.getDB(sourceDir, segmentDir, TRANS_DB_NAME);
+    DBInterface destHistoryDb = DbTool.getDB(sourceDir, segmentDir,
+        TRANSACTION_HISTORY_DB_NAME);
+    List<long[]> chunks = Lists.newArrayList();
+    for (long from = segment.getFrom(); from <= segment.getTo(); from += FILL_CHUNK_BLKS) {
+      chunks.add(new long[] {from, Math.min(from + FILL_CHUNK_BLKS - 1, segment.getTo())});
+    }
+    try (ProgressBar pb = new ProgressBar(segment.getName(),
+        segment.getTo() - segment.getFrom() + 1)) {
+      chunks.parallelStream().forEach(chunk -> {
+        try (BatchWriter blockWriter = new BatchWriter(destBlockDb);
+             BatchWriter blockIndexWriter = new BatchWriter(destBlockIndexDb);
+             BatchWriter tranRetWriter = new BatchWriter(destTranRetDb);
+             BatchWriter transWriter = new BatchWriter(destTransDb);
+             BatchWriter historyWriter = new BatchWriter(destHistoryDb)) {
+          for (long blockNum = chunk[0]; blockNum <= chunk[1]; blockNum++) {
+            byte[] blockNumBytes = ByteArray.fromLong(blockNum);
+            byte[] blockId = blockIndexStore.get(blockNumBytes);
+            byte[] block = blockStore.get(blockId);
+            blockWriter.put(blockId, block);
+            blockIndexWriter.put(blockNumBytes, blockId);
+            byte[] ret = tranRetStore.find(blockNumBytes);
+            if (ret != null) {
+              tranRetWriter.put(blockNumBytes, ret);
+            }
+            for (Protocol.Transaction tc : Protocol.Block.parseFrom(block)
+                .getTransactionsList()) {
+              byte[] id = DBUtils.getTransactionId(tc).getBytes();
+              byte[] value = transStore.find(id);
+              if (value != null) {
+                transWriter.put(id, value);
+              }
+              value = historyStore.find(id);
+              if (value != null) {
+                historyWriter.put(id, value);
+              }
+            }
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e.getMessage());
+        }
+        pb.stepBy(chunk[1] - chunk[0] + 1);
+      });
+    }
+    // the segment is complete once its dbs are closed
+    for (String dbName : archiveDbs) {
+      DbTool.closeDB(segmentDir, dbName);
+    }
+    copyEngineIfExist(sourceDir, segmentDir, archiveDbs.toArray(new String[0]));
+  }
+
+  private static void waitFor(Future<Void> future) throws IOException, RocksDBException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RocksDBException) {
+        throw (RocksDBException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
   /**
    * Merge the history dataset into database.
    *
@@ -221,27 +671,59 @@ public class DbLite implements Callable<Integer> {
     spec.commandLine().getOut().println("Start merge history to lite node.");
     long start = System.currentTimeMillis();
     try {
-      // check historyDir is from lite data
-      if (isLite(historyDir)) {
-        throw new IllegalStateException(
-            String.format("Unavailable history: %s is not generated by fullNode data.",
-                historyDir));
+      String history = new File(historyDir).getAbsolutePath();
+      MergeJournal journal = MergeJournal.load(MergeJournal.fileOf(liteDir));
+      if (journal == null) {
+        // check historyDir is from lite data
+        if (isLite(historyDir)) {
+          throw new IllegalStateException(
+              String.format("Unavailable history: %s is not generated by fullNode data.",
+                  historyDir));
+        }
+        // 1. check block number and genesis block are compatible,
+        //    and return the block numbers of snapshot and history
+        BlockNumInfo blockNumInfo = checkAndGetBlockNumInfo(historyDir, liteDir);
+        journal = MergeJournal.create(MergeJournal.fileOf(liteDir), history,
+            BACKUP_DIR_PREFIX + START_TIME, blockNumInfo);
+      } else if (!history.equals(journal.getHistoryDir())) {
+        throw new IllegalStateException(String.format(
+            "An unfinished merge of %s exists in %s, please merge it again first.",
+            journal.getHistoryDir(), liteDir));
+      } else {
+        logger.info("Resume the unfinished merge of {}.", history);
+        spec.commandLine().getOut().format("Resume the unfinished merge of %s.", history)
+            .println();
       }
-      // 1. check block number and genesis block are compatible,
-      //    and return the block numbers of snapshot and history
-      BlockNumInfo blockNumInfo = checkAndGetBlockNumInfo(historyDir, liteDir);
+      BlockNumInfo blockNumInfo = journal.getBlockNumInfo();
+      Path bakDir = Paths.get(liteDir, journal.getBakDir());
       // 2. move archive dbs to bak
-      backupArchiveDbs(liteDir);
+      if (!journal.isDone(MergeJournal.Step.BACKUP)) {
+        backupArchiveDbs(liteDir, bakDir);
+        journal.complete(MergeJournal.Step.BACKUP);
+      }
       // 3. copy history data to liteDir
-      copyHistory2Database(historyDir, liteDir);
+      if (!journal.isDone(MergeJournal.Step.COPY)) {
+        copyHistory2Database(historyDir, liteDir, journal);
+        journal.complete(MergeJournal.Step.COPY);
+      }
       // 4. delete the extra block data in history data
-      trimExtraHistory(liteDir, blockNumInfo);
+      if (!journal.isDone(MergeJournal.Step.TRIM)) {
+        trimExtraHistory(liteDir, blockNumInfo, journal);
+        journal.complete(MergeJournal.Step.TRIM);
+      }
       // 5. merge bak to database
-      mergeBak2Database(liteDir, blockNumInfo);
+      if (!journal.isDone(MergeJournal.Step.MERGE)) {
+        mergeBak2Database(liteDir, bakDir, blockNumInfo, journal);
+        journal.complete(MergeJournal.Step.MERGE);
+      }
       // 6. delete bak dir
-      deleteBackupArchiveDbs(liteDir);
+      if (!journal.isDone(MergeJournal.Step.DELETE_BAK)) {
+        deleteBackupArchiveDbs(bakDir);
+        journal.complete(MergeJournal.Step.DELETE_BAK);
+      }
       // 7. delete snapshot flag
       deleteSnapshotFlag(liteDir);
+      journal.delete();
     } catch (IOException | RocksDBException  e) {
       logger.error("Merge history data to database failed, {}.", e.getMessage());
       spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
@@ -253,6 +735,78 @@ public class DbLite implements Callable<Integer> {
     spec.commandLine().getOut().format("Merge history finished, take %d s.", during).println();
   }
 
+  /**
+   * Merge the segments of a segmented history into database, only the segments from
+   * the one holding {@code --from-block} up to the snapshot are read.
+   * The segments are merged from the newest down, the lowest block in the info file is
+   * moved down after each one, so the blocks of the database stay contiguous and an
+   * interrupted merge continues from the last merged segment.
+   *
+   * @param historyDir the path that stores the segmented history dataset
+   * @param liteDir lite fullnode database path
+   */
+  public void mergeHistorySegments(String historyDir, String liteDir) {
+    logger.info("Start merge history segments to lite node.");
+    spec.commandLine().getOut().println("Start merge history segments to lite node.");
+    long start = System.currentTimeMillis();
+    try {
+      HistorySegments manifest = HistorySegments.load(HistorySegments.fileOf(historyDir));
+      String snapshotInfo = Paths.get(liteDir, INFO_FILE_NAME).toString();
+      if (!FileUtils.isExists(snapshotInfo)) {
+        throw new FileNotFoundException(
+            "Snapshot property file is not found. maybe this is a complete fullnode?");
+      }
+      String genesis = ByteArray.toHexString(getGenesisBlockHash(liteDir));
+      if (!genesis.equals(manifest.getGenesis())) {
+        throw new RuntimeException(String.format(
+            "Genesis block hash is not equal, history: %s, database: %s",
+            manifest.getGenesis(), genesis));
+      }
+      // the info file, not the block index, a segment may be half merged
+      long snapshotMinNum = Long.parseLong(FileUtils.readProperty(snapshotInfo,
+          DBUtils.SPLIT_BLOCK_NUM));
+      long lowest = Math.max(fromBlock, 1);
+      if (lowest >= snapshotMinNum) {
+        logger.info("Ignore merging the segments, database starts at block {}.",
+            snapshotMinNum);
+        spec.commandLine().getOut().format(
+            "Ignore merging the segments, database starts at block %d.", snapshotMinNum)
+            .println();
+        return;
+      }
+      List<HistorySegments.Segment> segments = manifest.cover(lowest, snapshotMinNum - 1);
+      Collections.reverse(segments);
+      for (HistorySegments.Segment segment : segments) {
+        String segmentDir = Paths.get(historyDir, segment.getName()).toString();
+        long end = Math.min(segment.getTo(), snapshotMinNum - 1);
+        logger.info("Begin to merge segment {}, start {} end {}.", segment.getName(),
+            segment.getFrom(), end);
+        spec.commandLine().getOut().format("Begin to merge segment %s, start %d end %d.",
+            segment.getName(), segment.getFrom(), end).println();
+        mergeBlocks(segmentDir, liteDir, segment.getFrom(), end, null);
+        for (String dbName : archiveDbs) {
+          DbTool.closeDB(segmentDir, dbName);
+        }
+        snapshotMinNum = Math.max(segment.getFrom(), 1);
+        if (snapshotMinNum == 1) {
+          deleteSnapshotFlag(liteDir);
+        } else if (!FileUtils.writeProperty(snapshotInfo, DBUtils.SPLIT_BLOCK_NUM,
+            Long.toString(snapshotMinNum))) {
+          throw new RuntimeException("Write properties file failed.");
+        }
+      }
+    } catch (IOException | RocksDBException e) {
+      logger.error("Merge history segments to database failed, {}.", e.getMessage());
+      spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+          .stackTraceText(e));
+      return;
+    }
+    long during = (System.currentTimeMillis() - start) / 1000;
+    logger.info("Merge history segments finished, take {} s.", during);
+    spec.commandLine().getOut().format("Merge history segments finished, take %d s.", during)
+        .println();
+  }
+
   private List<String> getSnapshotDbs(String sourceDir) {
     List<String> snapshotDbs = Lists.newArrayList();
     File basePath = new File(sourceDir);
@@ -272,7 +826,12 @@ public class DbLite implements Callable<Integer> {
     mergeCheckpoint(sourceDir, destDir, archiveDbs);
   }
 
-  private void split(String sourceDir, String destDir, List<String> dbs) throws IOException {
+  /**
+   * Copy the dbs of the source, a RocksDB store by its native checkpoint, so each store is
+   * a consistent image and its table files are hard linked, not read.
+   */
+  private void split(String sourceDir, String destDir, List<String> dbs)
+      throws IOException, RocksDBException {
     logger.info("Begin to split the dbs.");
     spec.commandLine().getOut().println("Begin to split the dbs.");
     if (!new File(sourceDir).isDirectory()) {
@@ -286,60 +845,55 @@ public class DbLite implements Callable<Integer> {
     if (!destPath.mkdirs()) {
       throw new RuntimeException(String.format("destDir: %s create failed, please check", destDir));
     }
-    FileUtils.copyDatabases(Paths.get(sourceDir), Paths.get(destDir), dbs);
+    for (String db : dbs) {
+      DbTool.copyStore(sourceDir, destDir, db);
+    }
   }
 
   private void mergeCheckpoint(String sourceDir, String destDir, List<String> destDbs) {
+    CheckpointReplay replay = foldCheckpoint(sourceDir, destDbs);
+    if (replay == null) {
+      return;
+    }
+    try {
+      replay.apply(destDir);
+    } catch (IOException | RocksDBException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Fold the checkpoints of the source for the stores.
+   *
+   * @return the replay, null if the source has no checkpoint
+   */
+  private CheckpointReplay foldCheckpoint(String sourceDir, List<String> destDbs) {
     logger.info("Begin to merge checkpoint to dataset.");
     spec.commandLine().getOut().println("Begin to merge checkpoint to dataset.");
     try {
+      List<DBInterface> checkpoints = Lists.newArrayList();
       List<String> cpList = getCheckpointV2List(sourceDir);
       if (cpList.size() > 0) {
         for (String cp : cpList) {
-          DBInterface checkpointDb = DbTool.getDB(
-              sourceDir + "/" + DBUtils.CHECKPOINT_DB_V2, cp);
-          recover(checkpointDb, destDir, destDbs);
+          checkpoints.add(DbTool.getDB(sourceDir + "/" + DBUtils.CHECKPOINT_DB_V2, cp));
         }
       } else if (Paths.get(sourceDir, CHECKPOINT_DB).toFile().exists()) {
-        DBInterface tmpDb = DbTool.getDB(sourceDir, CHECKPOINT_DB);
-        recover(tmpDb, destDir, destDbs);
+        checkpoints.add(DbTool.getDB(sourceDir, CHECKPOINT_DB));
+      }
+      if (checkpoints.isEmpty()) {
+        return null;
       }
+      // skip trans-cache db
+      CheckpointReplay replay = new CheckpointReplay(destDbs.stream()
+          .filter(db -> !TRANS_CACHE_DB_NAME.equalsIgnoreCase(db))
+          .collect(Collectors.toList()));
+      replay.fold(checkpoints);
+      return replay;
     } catch (IOException | RocksDBException e) {
       throw new RuntimeException(e);
     }
   }
 
-  private void recover(DBInterface db, String destDir, List<String> destDbs)
-      throws IOException, RocksDBException {
-    try (DBIterator iterator = db.iterator()) {
-      for (iterator.seekToFirst(); iterator.hasNext(); iterator.next()) {
-        byte[] key = iterator.getKey();
-        byte[] value = iterator.getValue();
-        String dbName = DBUtils.simpleDecode(key);
-        // skip trans-cache db
-        if (TRANS_CACHE_DB_NAME.equalsIgnoreCase(dbName)) {
-          continue;
-        }
-        byte[] realKey = Arrays.copyOfRange(key, dbName.getBytes().length + 4, key.length);
-        byte[] realValue =
-            value.length == 1 ? null : Arrays.copyOfRange(value, 1, value.length);
-        if (destDbs != null && destDbs.contains(dbName)) {
-          DBInterface destDb = DbTool.getDB(destDir, dbName);
-          if (realValue != null) {
-            destDb.put(realKey, realValue);
-          } else {
-            byte op = value[0];
-            if (DBUtils.Operator.DELETE.getValue() == op) {
-              destDb.delete(realKey);
-            } else {
-              destDb.put(realKey, new byte[0]);
-            }
-          }
-        }
-      }
-    }
-  }
-
   private void generateInfoProperties(String propertyfile, long num)
           throws IOException, RocksDBException {
     logger.info("Create {} for dataset.", INFO_FILE_NAME);
@@ -379,9 +933,11 @@ public class DbLite implements Callable<Integer> {
 
   /**
    * recent blocks, trans and genesis block.
+   * The recent blocks are filled by chunks in parallel, each worker reads its block range,
+   * parses the blocks, hashes the transaction ids and writes with its own batch writers.
    */
-  private void fillSnapshotBlockAndTransDb(String sourceDir, String snapshotDir)
-          throws IOException, RocksDBException {
+  private void fillSnapshotBlockAndTransDb(String sourceDir, String snapshotDir,
+      long latestBlockNum) throws IOException, RocksDBException {
     logger.info("Begin to fill {} block, genesis block and trans to snapshot.", RECENT_BLKS);
     spec.commandLine().getOut().format(
         "Begin to fill %d block, genesis block and trans to snapshot.", RECENT_BLKS).println();
@@ -391,35 +947,48 @@ public class DbLite implements Callable<Integer> {
     DBInterface destBlockDb = DbTool.getDB(sourceDir, snapshotDir, BLOCK_DB_NAME);
     DBInterface destBlockIndexDb = DbTool.getDB(sourceDir, snapshotDir, BLOCK_INDEX_DB_NAME);
     DBInterface destTransDb = DbTool.getDB(sourceDir, snapshotDir, TRANS_DB_NAME);
+    // resolve the source stores once, not per block
+    CheckpointOverlay overlay = getCheckpointOverlay(sourceDir);
+    SourceStore blockIndexStore = new SourceStore(BLOCK_INDEX_DB_NAME, sourceBlockIndexDb,
+        overlay);
+    SourceStore blockStore = new SourceStore(BLOCK_DB_NAME, sourceBlockDb, overlay);
     // put genesis block and block-index into snapshot
     long genesisBlockNum = 0L;
     byte[] genesisBlockID = sourceBlockIndexDb.get(ByteArray.fromLong(genesisBlockNum));
     destBlockIndexDb.put(ByteArray.fromLong(genesisBlockNum), genesisBlockID);
     destBlockDb.put(genesisBlockID, sourceBlockDb.get(genesisBlockID));
 
-    long latestBlockNum = getLatestBlockHeaderNum(sourceDir);
     long startIndex = latestBlockNum - RECENT_BLKS + 1;
     // put the recent blocks and trans in snapshot
-    ProgressBar.wrap(LongStream.rangeClosed(startIndex, latestBlockNum), "fillBlockAndTrans")
-        .forEach(blockNum ->  {
-          try {
-            byte[] blockId = getDataFromSourceDB(sourceDir, BLOCK_INDEX_DB_NAME,
-                Longs.toByteArray(blockNum));
-            byte[] block = getDataFromSourceDB(sourceDir, BLOCK_DB_NAME, blockId);
+    List<long[]> chunks = Lists.newArrayList();
+    for (long from = startIndex; from <= latestBlockNum; from += FILL_CHUNK_BLKS) {
+      chunks.add(new long[] {from, Math.min(from + FILL_CHUNK_BLKS - 1, latestBlockNum)});
+    }
+    try (ProgressBar pb = new ProgressBar("fillBlockAndTrans", latestBlockNum - startIndex + 1)) {
+      chunks.parallelStream().forEach(chunk -> {
+        try (BatchWriter blockWriter = new BatchWriter(destBlockDb);
+             BatchWriter blockIndexWriter = new BatchWriter(destBlockIndexDb);
+             BatchWriter transWriter = new BatchWriter(destTransDb)) {
+          for (long blockNum = chunk[0]; blockNum <= chunk[1]; blockNum++) {
+            byte[] blockNumBytes = ByteArray.fromLong(blockNum);
+            byte[] blockId = blockIndexStore.get(blockNumBytes);
+            byte[] block = blockStore.get(blockId);
             // put block
-            destBlockDb.put(blockId, block);
+            blockWriter.put(blockId, block);
             // put block index
-            destBlockIndexDb.put(ByteArray.fromLong(blockNum), blockId);
+            blockIndexWriter.put(blockNumBytes, blockId);
             // put trans
-            long finalBlockNum = blockNum;
-            Protocol.Block.parseFrom(block).getTransactionsList().stream().map(
-                tc -> DBUtils.getTransactionId(tc).getBytes())
-                .map(bytes -> Maps.immutableEntry(bytes, Longs.toByteArray(finalBlockNum)))
-                .forEach(e -> destTransDb.put(e.getKey(), e.getValue()));
-          } catch (IOException | RocksDBException e) {
-            throw new RuntimeException(e.getMessage());
+            for (Protocol.Transaction tc : Protocol.Block.parseFrom(block)
+                .getTransactionsList()) {
+              transWriter.put(DBUtils.getTransactionId(tc).getBytes(), blockNumBytes);
+            }
           }
-        });
+        } catch (IOException e) {
+          throw new RuntimeException(e.getMessage());
+        }
+        pb.stepBy(chunk[1] - chunk[0] + 1);
+      });
+    }
     // copy engine.properties for block、block-index、trans from source if exist
     copyEngineIfExist(sourceDir, snapshotDir, BLOCK_DB_NAME, BLOCK_INDEX_DB_NAME, TRANS_DB_NAME);
   }
@@ -488,25 +1057,48 @@ public class DbLite implements Callable<Integer> {
     return new BlockNumInfo(snapshotMinNum, historyMaxNum, snapshotMaxNum);
   }
 
-  private void backupArchiveDbs(String databaseDir) throws IOException {
-    Path bakDir = Paths.get(databaseDir, BACKUP_DIR_PREFIX + START_TIME);
+  /**
+   * Move the archive dbs to the bak dir, each db by one rename, so a store is either
+   * in the database dir or in the bak dir and the move can be repeated after a crash.
+   */
+  private void backupArchiveDbs(String databaseDir, Path bakDir) throws IOException {
     logger.info("Backup the archive dbs to {}.", bakDir);
     spec.commandLine().getOut().format("Backup the archive dbs to %s.", bakDir).println();
     if (!FileUtils.createDirIfNotExists(bakDir.toString())) {
       throw new RuntimeException(String.format("create bak dir %s failed", bakDir));
     }
-    FileUtils.copyDatabases(Paths.get(databaseDir), bakDir, archiveDbs);
-    archiveDbs.forEach(db -> FileUtils.deleteDir(new File(databaseDir, db)));
+    for (String db : archiveDbs) {
+      Path source = Paths.get(databaseDir, db);
+      Path dest = bakDir.resolve(db);
+      if (source.toFile().exists() && !dest.toFile().exists()) {
+        DbTool.closeDB(databaseDir, db);
+        Files.move(source, dest, StandardCopyOption.ATOMIC_MOVE);
+      }
+    }
   }
 
-  private void copyHistory2Database(String historyDir, String databaseDir) throws IOException {
+  /**
+   * Copy the history dbs, the copied dbs are journaled one by one,
+   * a db left half copied by a crash is copied again.
+   */
+  private void copyHistory2Database(String historyDir, String databaseDir,
+      MergeJournal journal) throws IOException {
     logger.info("Begin to copy history to database.");
     spec.commandLine().getOut().println("Begin to copy history to database.");
-    FileUtils.copyDatabases(Paths.get(historyDir), Paths.get(databaseDir), archiveDbs);
+    for (String db : archiveDbs) {
+      String task = "copy." + db;
+      if (journal.isDone(task)) {
+        continue;
+      }
+      FileUtils.deleteDir(new File(databaseDir, db));
+      FileUtils.copyDatabases(Paths.get(historyDir), Paths.get(databaseDir),
+          Collections.singletonList(db));
+      journal.complete(task);
+    }
   }
 
-  private void trimExtraHistory(String liteDir, BlockNumInfo blockNumInfo)
-          throws IOException, RocksDBException {
+  private void trimExtraHistory(String liteDir, BlockNumInfo blockNumInfo,
+      MergeJournal journal) throws IOException, RocksDBException {
     long start = blockNumInfo.getSnapshotMaxNum() + 1;
     long end = blockNumInfo.getHistoryMaxNum();
     if (start > end) {
@@ -522,32 +1114,54 @@ public class DbLite implements Callable<Integer> {
     DBInterface blockDb = DbTool.getDB(liteDir, BLOCK_DB_NAME);
     DBInterface transDb = DbTool.getDB(liteDir, TRANS_DB_NAME);
     DBInterface tranRetDb = DbTool.getDB(liteDir, TRANSACTION_RET_DB_NAME);
-
-
-    ProgressBar.wrap(LongStream.rangeClosed(start, end)
-        .boxed()
-        .sorted((a, b) -> Long.compare(b, a)), "trimHistory").forEach(n -> {
-          try {
-            byte[] blockIdHash = blockIndexDb.get(ByteArray.fromLong(n));
-            Protocol.Block block = Protocol.Block.parseFrom(blockDb.get(blockIdHash));
-            // delete transactions
-            for (Protocol.Transaction e : block.getTransactionsList()) {
-              transDb.delete(DBUtils.getTransactionId(e).getBytes());
+    // delete transactions, the keys are only known from the blocks, parse them in parallel,
+    // journaled before the blocks are deleted, the blocks are needed to repeat it
+    long trans = journal.isDone(TRIM_TRANS_TASK) ? 0 : DbTool.scan(blockDb,
+        blockRanges(start, end, DbTool.CPUS * 4), DbTool.CPUS,
+        (range, iterator) -> {
+          long count = 0;
+          try (BatchWriter transWriter = new BatchWriter(transDb)) {
+            while (iterator.hasNext()) {
+              Protocol.Block block = Protocol.Block.parseFrom(iterator.next().getValue());
+              for (Protocol.Transaction e : block.getTransactionsList()) {
+                transWriter.delete(DBUtils.getTransactionId(e).getBytes());
+                count++;
+              }
             }
-            // delete transaction result
-            tranRetDb.delete(ByteArray.fromLong(n));
-            // delete block
-            blockDb.delete(blockIdHash);
-            // delete block index
-            blockIndexDb.delete(ByteArray.fromLong(n));
-          } catch (IOException e) {
-            throw new RuntimeException(e);
           }
-        });
+          return count;
+        }).stream().mapToLong(Long::longValue).sum();
+    journal.complete(TRIM_TRANS_TASK);
+    // transaction result, block and block index are keyed by the block number first
+    byte[] from = ByteArray.fromLong(start);
+    byte[] to = ByteArray.fromLong(end + 1);
+    tranRetDb.deleteRange(from, to);
+    blockDb.deleteRange(from, to);
+    blockIndexDb.deleteRange(from, to);
+    logger.info("Trim {} blocks and {} transactions from the history data.",
+        end - start + 1, trans);
   }
 
-  private void mergeBak2Database(String liteDir, BlockNumInfo blockNumInfo) throws
-      IOException, RocksDBException {
+  /**
+   * Split the blocks [start, end] into key ranges of block-number-prefixed keys.
+   *
+   * @param start first block number
+   * @param end last block number
+   * @param parts max number of ranges
+   * @return ordered, disjoint ranges covering the blocks
+   */
+  private static List<KeyRange> blockRanges(long start, long end, int parts) {
+    long step = Math.max(FILL_CHUNK_BLKS, (end - start + parts) / parts);
+    List<KeyRange> ranges = Lists.newArrayList();
+    for (long from = start; from <= end; from += step) {
+      ranges.add(new KeyRange(ByteArray.fromLong(from),
+          ByteArray.fromLong(Math.min(from + step, end + 1))));
+    }
+    return ranges;
+  }
+
+  private void mergeBak2Database(String liteDir, Path bakDir, BlockNumInfo blockNumInfo,
+      MergeJournal journal) throws IOException, RocksDBException {
     long start = blockNumInfo.getHistoryMaxNum() + 1;
     long end = blockNumInfo.getSnapshotMaxNum();
 
@@ -558,49 +1172,82 @@ public class DbLite implements Callable<Integer> {
       return;
     }
 
-
-    Path bakDir = Paths.get(liteDir, BACKUP_DIR_PREFIX + START_TIME);
     logger.info("Begin to merge {} to database, start {} end {}.", bakDir, start, end);
     spec.commandLine().getOut()
         .format("Begin to merge %s to database, start %d end %d.", bakDir, start, end).println();
-    byte[] head = ByteArray.fromLong(start);
-    // use seek to skip
-    archiveDbs.stream().parallel().forEach(dbName -> {
-      try {
-        DBInterface bakDb = DbTool.getDB(bakDir.toString(), dbName);
-        DBInterface destDb = DbTool.getDB(liteDir, dbName);
-        try (DBIterator iterator = bakDb.iterator()) {
-          if (TRANS_DB_NAME.equals(dbName) || TRANSACTION_HISTORY_DB_NAME.equals(dbName)) {
-            iterator.seekToFirst();
-          } else {
-            iterator.seek(head);
+    mergeBlocks(bakDir.toString(), liteDir, start, end, journal);
+  }
+
+  /**
+   * Copy the blocks [start, end] and their transactions of the archive dbs in a dir
+   * into the database.
+   *
+   * @param journal the journal of the stores merged, null if not journaled
+   */
+  private void mergeBlocks(String fromDir, String liteDir, long start, long end,
+      MergeJournal journal) throws IOException, RocksDBException {
+    List<KeyRange> ranges = blockRanges(start, end, DbTool.CPUS * 4);
+    // block, block-index and transactionRetStore are keyed by the block number first,
+    // copy only the missing block range
+    for (String dbName : Arrays.asList(BLOCK_DB_NAME, BLOCK_INDEX_DB_NAME,
+        TRANSACTION_RET_DB_NAME)) {
+      if (journal != null && journal.isDone("merge." + dbName)) {
+        continue;
+      }
+      DBInterface bakDb = DbTool.getDB(fromDir, dbName);
+      DBInterface destDb = DbTool.getDB(liteDir, dbName);
+      long copied = DbTool.scan(bakDb, ranges, DbTool.CPUS, (range, iterator) -> {
+        long count = 0;
+        try (BatchWriter writer = new BatchWriter(destDb)) {
+          while (iterator.hasNext()) {
+            Map.Entry<byte[], byte[]> e = iterator.next();
+            writer.put(e.getKey(), e.getValue());
+            count++;
           }
-          iterator.forEachRemaining(e -> destDb.put(e.getKey(), e.getValue()));
         }
-      } catch (IOException | RocksDBException e) {
-        throw new RuntimeException(e);
+        return count;
+      }).stream().mapToLong(Long::longValue).sum();
+      logger.info("Merge {} entries of {}.", copied, dbName);
+      if (journal != null) {
+        journal.complete("merge." + dbName);
       }
-    });
-  }
-
-  private byte[] getDataFromSourceDB(String sourceDir, String dbName, byte[] key)
-          throws IOException, RocksDBException {
-    DBInterface sourceDb = DbTool.getDB(sourceDir, dbName);
-    DBInterface checkpointDb = getCheckpointDb(sourceDir);
-    // get data from tmp first.
-    byte[] valueFromTmp = checkpointDb.get(Bytes.concat(simpleEncode(dbName), key));
-    byte[] value;
-    if (isEmptyBytes(valueFromTmp)) {
-      value = sourceDb.get(key);
-    } else {
-      value = valueFromTmp.length == 1
-          ? null : Arrays.copyOfRange(valueFromTmp, 1, valueFromTmp.length);
     }
-    if (isEmptyBytes(value)) {
-      throw new RuntimeException(String.format("data not found in store, dbName: %s, key: %s",
-              dbName, Arrays.toString(key)));
+    if (journal != null && journal.isDone(MERGE_TRANS_TASK)) {
+      return;
+    }
+    // trans and transactionHistoryStore are keyed by the transaction id,
+    // copy the transactions of the missing blocks only
+    DBInterface bakBlockDb = DbTool.getDB(fromDir, BLOCK_DB_NAME);
+    DBInterface bakTransDb = DbTool.getDB(fromDir, TRANS_DB_NAME);
+    DBInterface bakHistoryDb = DbTool.getDB(fromDir, TRANSACTION_HISTORY_DB_NAME);
+    DBInterface destTransDb = DbTool.getDB(liteDir, TRANS_DB_NAME);
+    DBInterface destHistoryDb = DbTool.getDB(liteDir, TRANSACTION_HISTORY_DB_NAME);
+    long trans = DbTool.scan(bakBlockDb, ranges, DbTool.CPUS, (range, iterator) -> {
+      long count = 0;
+      try (BatchWriter transWriter = new BatchWriter(destTransDb);
+           BatchWriter historyWriter = new BatchWriter(destHistoryDb)) {
+        while (iterator.hasNext()) {
+          Protocol.Block block = Protocol.Block.parseFrom(iterator.next().getValue());
+          for (Protocol.Transaction e : block.getTransactionsList()) {
+            byte[] id = DBUtils.getTransactionId(e).getBytes();
+            byte[] value = bakTransDb.get(id);
+            if (value != null) {
+              transWriter.put(id, value);
+              count++;
+            }
+            value = bakHistoryDb.get(id);
+            if (value != null) {
+              historyWriter.put(id, value);
+            }
+          }
+        }
+      }
+      return count;
+    }).stream().mapToLong(Long::longValue).sum();
+    logger.info("Merge {} transactions of {} blocks.", trans, end - start + 1);
+    if (journal != null) {
+      journal.complete(MERGE_TRANS_TASK);
     }
-    return value;
   }
 
   /**
@@ -619,12 +1266,10 @@ public class DbLite implements Callable<Integer> {
   private void deleteSnapshotFlag(String databaseDir) throws IOException, RocksDBException {
     logger.info("Delete the info file from {}.", databaseDir);
     spec.commandLine().getOut().format("Delete the info file from %s.", databaseDir).println();
-    Files.delete(Paths.get(databaseDir, INFO_FILE_NAME));
+    Files.deleteIfExists(Paths.get(databaseDir, INFO_FILE_NAME));
   }
 
-  private void deleteBackupArchiveDbs(String liteDir) throws IOException, RocksDBException {
-
-    Path bakDir = Paths.get(liteDir, BACKUP_DIR_PREFIX + START_TIME);
+  private void deleteBackupArchiveDbs(Path bakDir) throws IOException, RocksDBException {
     logger.info("Begin to delete bak dir {}.", bakDir);
     spec.commandLine().getOut().format("Begin to delete bak dir %s.", bakDir).println();
     if (FileUtils.deleteDir(bakDir.toFile())) {
@@ -656,10 +1301,14 @@ public class DbLite implements Callable<Integer> {
   private long getSecondBlock(String databaseDir) throws RocksDBException, IOException {
     long num = 0;
     DBInterface sourceBlockIndexDb = DbTool.getDB(databaseDir, BLOCK_INDEX_DB_NAME);
-    DBIterator iterator = sourceBlockIndexDb.iterator();
-    iterator.seek(ByteArray.fromLong(1));
-    if (iterator.hasNext()) {
-      num =  Longs.fromByteArray(iterator.getKey());
+    // the blocks only in the checkpoint count too, a history dataset has no checkpoint
+    try (DBIterator iterator = hasCheckpoint(databaseDir)
+        ? getCheckpointOverlay(databaseDir).iterator(BLOCK_INDEX_DB_NAME, sourceBlockIndexDb)
+        : sourceBlockIndexDb.iterator()) {
+      iterator.seek(ByteArray.fromLong(1));
+      if (iterator.hasNext()) {
+        num = Longs.fromByteArray(iterator.getKey());
+      }
     }
     return num;
   }
@@ -677,6 +1326,24 @@ public class DbLite implements Callable<Integer> {
     return checkpointDb;
   }
 
+  private boolean hasCheckpoint(String databaseDir) {
+    return !getCheckpointV2List(databaseDir).isEmpty()
+        || Paths.get(databaseDir, CHECKPOINT_DB).toFile().exists();
+  }
+
+  /**
+   * The latest checkpoint of the source in memory, loaded once per source.
+   */
+  private CheckpointOverlay getCheckpointOverlay(String sourceDir)
+      throws IOException, RocksDBException {
+    CheckpointOverlay overlay = overlays.get(sourceDir);
+    if (overlay == null) {
+      overlay = CheckpointOverlay.load(getCheckpointDb(sourceDir));
+      overlays.put(sourceDir, overlay);
+    }
+    return overlay;
+  }
+
   @VisibleForTesting
   public static void setRecentBlks(long recentBlks) {
     RECENT_BLKS = recentBlks;
@@ -696,6 +1363,38 @@ public class DbLite implements Callable<Integer> {
     return Lists.newArrayList();
   }
 
+  /**
+   * A store of the source db, read through the checkpoint overlay first.
+   */
+  private static class SourceStore {
+    private final String dbName;
+    private final DBInterface sourceDb;
+    private final CheckpointOverlay overlay;
+
+    SourceStore(String dbName, DBInterface sourceDb, CheckpointOverlay overlay) {
+      this.dbName = dbName;
+      this.sourceDb = sourceDb;
+      this.overlay = overlay;
+    }
+
+    byte[] get(byte[] key) {
+      byte[] value = find(key);
+      if (value == null) {
+        throw new RuntimeException(String.format("data not found in store, dbName: %s, key: %s",
+            dbName, Arrays.toString(key)));
+      }
+      return value;
+    }
+
+    /**
+     * Get the value, null if not found.
+     */
+    byte[] find(byte[] key) {
+      byte[] value = overlay.get(dbName, sourceDb, key);
+      return isEmptyBytes(value) ? null : value;
+    }
+  }
+
   static class BlockNumInfo {
     private final long snapshotMinNum;
     private final long snapshotMaxNum;
@@ -154,7 +154,7 @@ public class DbQuery implements Callable<Integer> {
     return 0;
   }
 
-  private void processVotes(Config queryConfig) throws BadItemException {
+  private void processVotes(Config queryConfig) throws BadItemException, IOException {
     if (queryConfig.hasPath(VOTES_ALL_WITNESSES)) {
       allWitness = queryConfig.getBoolean(VOTES_ALL_WITNESSES);
     }
@@ -304,35 +304,27 @@ public class DbQuery implements Callable<Integer> {
   }
 
 
-  private Map<ByteString, Long> countVote() {
+  private Map<ByteString, Long> countVote() throws IOException {
     final Map<ByteString, Long> countWitness = Maps.newHashMap();
-    DBIterator dbIterator = votesStore.iterator();
+    // count the key ranges of votes store in parallel, then merge in key order
+    List<VoteCount> counts = DbTool.scan(votesStore, (range, dbIterator) -> {
+      VoteCount count = new VoteCount();
+      while (dbIterator.hasNext()) {
+        Entry<byte[], byte[]> next = dbIterator.next();
+        VotesCapsule votes = new VotesCapsule(next.getValue());
+        count.voters.put(ByteString.copyFrom(next.getKey()), votes);
+        votes.getOldVotes().forEach(vote ->
+            count.witness.merge(vote.getVoteAddress(), -vote.getVoteCount(), Long::sum));
+        votes.getNewVotes().forEach(vote ->
+            count.witness.merge(vote.getVoteAddress(), vote.getVoteCount(), Long::sum));
+      }
+      return count;
+    });
     long sizeCount = 0;
-    dbIterator.seekToFirst();
-    while (dbIterator.hasNext()) {
-      Entry<byte[], byte[]> next = dbIterator.next();
-      VotesCapsule votes = new VotesCapsule(next.getValue());
-      voters.put(ByteString.copyFrom(next.getKey()), votes);
-
-      votes.getOldVotes().forEach(vote -> {
-        ByteString voteAddress = vote.getVoteAddress();
-        long voteCount = vote.getVoteCount();
-        if (countWitness.containsKey(voteAddress)) {
-          countWitness.put(voteAddress, countWitness.get(voteAddress) - voteCount);
-        } else {
-          countWitness.put(voteAddress, -voteCount);
-        }
-      });
-      votes.getNewVotes().forEach(vote -> {
-        ByteString voteAddress = vote.getVoteAddress();
-        long voteCount = vote.getVoteCount();
-        if (countWitness.containsKey(voteAddress)) {
-          countWitness.put(voteAddress, countWitness.get(voteAddress) + voteCount);
-        } else {
-          countWitness.put(voteAddress, voteCount);
-        }
-      });
-      sizeCount++;
+    for (VoteCount count : counts) {
+      voters.putAll(count.voters);
+      count.witness.forEach((address, vote) -> countWitness.merge(address, vote, Long::sum));
+      sizeCount += count.voters.size();
     }
     spec.commandLine().getOut().format("There are total %d new votes in this epoch", sizeCount)
         .println();
@@ -398,6 +390,12 @@ public class DbQuery implements Callable<Integer> {
     }
   }
 
+  private static class VoteCount {
+
+    private final Map<ByteString, VotesCapsule> voters = new HashMap<>();
+    private final Map<ByteString, Long> witness = new HashMap<>();
+  }
+
   private Boolean existInWitnessList(VotesCapsule votesCapsule, List<String> witnessList) {
     AtomicBoolean exist = new AtomicBoolean(false);
     votesCapsule.getOldVotes().forEach(vote -> {
@@ -1,11 +1,8 @@
 package org.tron.plugins;
 
-import com.google.common.collect.Streams;
-import com.google.common.primitives.Bytes;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -13,16 +10,18 @@ import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import me.tongfei.progressbar.ProgressBar;
 import org.rocksdb.RocksDBException;
-import org.tron.plugins.utils.MerkleRoot;
+import org.tron.plugins.utils.MerkleBuilder;
 import org.tron.plugins.utils.Sha256Hash;
 import org.tron.plugins.utils.db.DBInterface;
 import org.tron.plugins.utils.db.DBIterator;
 import org.tron.plugins.utils.db.DbTool;
+import org.tron.plugins.utils.db.KeyRange;
+import org.tron.plugins.utils.db.RangeIterator;
 import picocli.CommandLine;
 
 @Slf4j(topic = "db-root")
 @CommandLine.Command(name = "root",
-    description = "compute merkle root for tiny db. NOTE: large db may GC overhead limit exceeded.",
+    description = "compute merkle root for db, streamed in constant memory.",
     exitCodeListHeading = "Exit Codes:%n",
     exitCodeList = {
         "0:Successful",
@@ -39,6 +38,21 @@ public class DbRoot implements Callable<Integer> {
       description = "db name for show root")
   private List<String> dbs;
 
+  @CommandLine.Option(names = {"-t", "--threads"}, defaultValue = "1",
+      description = "hash threads of each db, the key ranges are hashed in parallel and"
+          + " combined to the same root, after an extra counting pass over the db, which"
+          + " reads the values too on LevelDB. Default: ${DEFAULT-VALUE}")
+  private int threads;
+
+  @CommandLine.Option(names = {"--files"},
+      description = "root of the table files instead of the keys, the file hashes are cached"
+          + " in <db>" + TableFileHashes.SUFFIX + " next to the db, only new files are hashed.")
+  private boolean files;
+
+  @CommandLine.Option(names = {"--rehash"},
+      description = "with --files, hash every file again, fail if a file changed since cached.")
+  private boolean rehash;
+
   @CommandLine.Option(names = {"-h", "--help"}, help = true, description = "display a help message")
   private boolean help;
 
@@ -80,18 +94,16 @@ public class DbRoot implements Callable<Integer> {
   }
 
   private Ret calcMerkleRoot(String name) {
+    if (files) {
+      return calcFilesRoot(name);
+    }
     Ret info = new Ret();
     try (DBInterface database = DbTool.getDB(this.db, name)) {
-      DBIterator iterator = database.iterator();
-      iterator.seekToFirst();
-      ArrayList<Sha256Hash> ids = Streams.stream(iterator)
-          .map(this::getHash)
-          .collect(Collectors.toCollection(ArrayList::new));
-      Sha256Hash root = MerkleRoot.root(ids);
+      Sha256Hash root = threads > 1 ? parallelRoot(database) : sequentialRoot(database);
       logger.info("db: {},root: {}", database.getName(), root);
       info.code = 0;
       info.msg = String.format("db: %s,root: %s", database.getName(), root);
-    } catch (RocksDBException | IOException e) {
+    } catch (RocksDBException | IOException | RuntimeException e) {
       logger.error("calc db {} fail", name, e);
       info.code = 1;
       info.msg = String.format("db: %s,fail: %s",
@@ -100,9 +112,68 @@ public class DbRoot implements Callable<Integer> {
     return info;
   }
 
-  private Sha256Hash getHash(Map.Entry<byte[], byte[]> entry) {
-    return Sha256Hash.of(true,
-        Bytes.concat(entry.getKey(), entry.getValue()));
+  private Ret calcFilesRoot(String name) {
+    Ret info = new Ret();
+    try {
+      TableFileHashes.Result result = TableFileHashes.hash(db, name, threads, rehash);
+      if (result.getChanged().isEmpty()) {
+        info.code = 0;
+        info.msg = String.format("db: %s,files root: %s,files: %d,hashed: %d", name,
+            result.getRoot(), result.getFiles(), result.getHashed());
+      } else {
+        logger.error("db {} files changed since cached: {}", name, result.getChanged());
+        info.code = 1;
+        info.msg = String.format("db: %s,fail: files changed since cached %s", name,
+            result.getChanged());
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.error("calc db {} files fail", name, e);
+      info.code = 1;
+      info.msg = String.format("db: %s,fail: %s", name, e.getMessage());
+    }
+    return info;
+  }
+
+  private Sha256Hash sequentialRoot(DBInterface database) throws IOException {
+    try (DBIterator iterator = database.iterator()) {
+      // leaves are streamed in key order, only the pending subtrees are kept
+      MerkleBuilder builder = new MerkleBuilder();
+      iterator.seekToFirst();
+      while (iterator.hasNext()) {
+        Map.Entry<byte[], byte[]> entry = iterator.next();
+        builder.add(entry.getKey(), entry.getValue());
+      }
+      return builder.root();
+    }
+  }
+
+  /**
+   * The keys of each range are counted first, so each range knows the index of its first
+   * leaf, then the ranges are hashed into subtrees aligned to the whole tree and appended
+   * in key order. The count walks only the keys on RocksDB, leveldbjni copies the values
+   * too, so on LevelDB the db is read twice.
+   */
+  private Sha256Hash parallelRoot(DBInterface database) throws IOException {
+    List<KeyRange> ranges = DbTool.splitRanges(database, threads * 4);
+    List<Long> counts = DbTool.count(database, ranges, threads);
+    long[] offsets = new long[ranges.size()];
+    for (int i = 1; i < offsets.length; i++) {
+      offsets[i] = offsets[i - 1] + counts.get(i - 1);
+    }
+    List<MerkleBuilder> builders = DbTool.run(database, ranges, threads, (index, range) -> {
+      MerkleBuilder builder = new MerkleBuilder(offsets[index]);
+      try (DBIterator iterator = new RangeIterator(database.iterator(), range)) {
+        iterator.seekToFirst();
+        while (iterator.hasNext()) {
+          Map.Entry<byte[], byte[]> entry = iterator.next();
+          builder.add(entry.getKey(), entry.getValue());
+        }
+      }
+      return builder;
+    });
+    MerkleBuilder root = new MerkleBuilder();
+    builders.forEach(root::append);
+    return root.root();
   }
 
   private void printInfo(Ret ret) {
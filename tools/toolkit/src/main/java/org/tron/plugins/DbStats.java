@@ -0,0 +1,162 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import me.tongfei.progressbar.ProgressBar;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DbTool;
+import picocli.CommandLine;
+
+@Slf4j(topic = "db-stats")
+@CommandLine.Command(name = "stats",
+    description = "show key counts, bytes per level and average key/value sizes of dbs.",
+    exitCodeListHeading = "Exit Codes:%n",
+    exitCodeList = {
+        "0:Successful",
+        "n:query failed,please check toolkit.log"})
+public class DbStats implements Callable<Integer> {
+
+  private static final String CURRENT = "CURRENT";
+  private static final double MB = 1024 * 1024;
+
+  @CommandLine.Spec
+  CommandLine.Model.CommandSpec spec;
+  @CommandLine.Parameters(index = "0", defaultValue = "output-directory/database",
+      description = "Input path. Default: ${DEFAULT-VALUE}")
+  private Path db;
+
+  @CommandLine.Option(names = { "--db"},
+      description = "db name for show stats, default: all dbs of the input path")
+  private List<String> dbs;
+
+  @CommandLine.Option(names = {"--exact"},
+      description = "count keys exactly by a parallel scan, key only on RocksDB, values are"
+          + " still read on LevelDB, default: estimate from engine metadata")
+  private boolean exact;
+
+  @CommandLine.Option(names = {"--sample"}, defaultValue = "10000",
+      description = "entries sampled for the average key/value sizes. Default: ${DEFAULT-VALUE}")
+  private int sample;
+
+  @CommandLine.Option(names = {"-h", "--help"}, help = true, description = "display a help message")
+  private boolean help;
+
+  @Override
+  public Integer call() throws Exception {
+    if (help) {
+      spec.commandLine().usage(System.out);
+      return 0;
+    }
+    if (!db.toFile().exists()) {
+      logger.info(" {} does not exist.", db);
+      spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+          .errorText(String.format("%s does not exist.", db)));
+      return 404;
+    }
+
+    if (dbs == null || dbs.isEmpty()) {
+      File[] files = db.toFile().listFiles(f -> new File(f, CURRENT).exists());
+      dbs = files == null ? new ArrayList<>() : Arrays.stream(files).map(File::getName)
+          .sorted().collect(Collectors.toList());
+    } else {
+      // remove not exit
+      dbs.removeIf(s -> !Paths.get(db.toString(), s).toFile().exists());
+    }
+
+    if (dbs.isEmpty()) {
+      logger.info("Specify at least one exit database: --db dbName.");
+      spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+          .errorText("Specify at least one exit database: --db dbName."));
+      return 404;
+    }
+    // each store is counted in parallel by itself
+    List<Ret> task = ProgressBar.wrap(dbs.stream(), "stats task")
+        .map(this::calcStats).collect(Collectors.toList());
+    task.forEach(this::printInfo);
+    int code = (int) task.stream().filter(r -> r.code == 1).count();
+    if (code > 0) {
+      spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+          .errorText("There are some errors, please check toolkit.log for detail."));
+    }
+    spec.commandLine().getOut().println("stats task done.");
+    return code;
+  }
+
+  private Ret calcStats(String name) {
+    Ret info = new Ret();
+    try (DBInterface database = DbTool.getDB(this.db, name)) {
+      long start = System.currentTimeMillis();
+      long keys = exact ? database.size() : database.estimatedSize();
+      long[] sizes = sampleSizes(database);
+      double avgKey = sizes[0] == 0 ? 0 : (double) sizes[1] / sizes[0];
+      double avgValue = sizes[0] == 0 ? 0 : (double) sizes[2] / sizes[0];
+      StringBuilder levels = new StringBuilder();
+      long total = 0;
+      for (Map.Entry<Integer, Long> level : database.getLevelSizes().entrySet()) {
+        levels.append(String.format(", L%d: %.0f MB", level.getKey(), level.getValue() / MB));
+        total += level.getValue();
+      }
+      info.code = 0;
+      info.msg = String.format("db: %s, keys: %d (%s), avg key: %.1f B, avg value: %.1f B, "
+              + "total: %.0f MB%s, cost: %d ms", database.getName(), keys,
+          exact ? "exact" : "estimated", avgKey, avgValue, total / MB, levels,
+          System.currentTimeMillis() - start);
+      logger.info(info.msg);
+    } catch (RocksDBException | IOException | RuntimeException e) {
+      logger.error("stats db {} fail", name, e);
+      info.code = 1;
+      info.msg = String.format("db: %s,fail: %s",
+          name, e.getMessage());
+    }
+    return info;
+  }
+
+  /**
+   * Sample the head of each range, so the sample is spread over the whole key space.
+   *
+   * @return sampled entries, key bytes and value bytes
+   */
+  private long[] sampleSizes(DBInterface database) throws IOException {
+    int parts = DbTool.CPUS;
+    int perRange = Math.max(1, sample / parts);
+    return DbTool.scan(database, DbTool.splitRanges(database, parts), parts, (range, iterator) -> {
+      long[] sizes = new long[3];
+      while (sizes[0] < perRange && iterator.hasNext()) {
+        Map.Entry<byte[], byte[]> entry = iterator.next();
+        sizes[0]++;
+        sizes[1] += entry.getKey().length;
+        sizes[2] += entry.getValue().length;
+      }
+      return sizes;
+    }).stream().reduce(new long[3], (a, b) -> {
+      for (int i = 0; i < a.length; i++) {
+        a[i] += b[i];
+      }
+      return a;
+    });
+  }
+
+  private void printInfo(Ret ret) {
+    if (ret.code == 0) {
+      spec.commandLine().getOut().println(ret.msg);
+    } else {
+      spec.commandLine().getErr().println(spec.commandLine().getColorScheme()
+          .errorText(ret.msg));
+    }
+  }
+
+  private static class Ret {
+    private int code;
+    private String msg;
+  }
+}
@@ -0,0 +1,200 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import lombok.Getter;
+
+/**
+ * Manifest of a history dataset split into fixed block-range segments.
+ * Segment k holds the blocks [k * size, (k + 1) * size - 1] of the archive dbs in its
+ * own dir, the last segment may be partial and is rebuilt when the chain grows.
+ * A segment is listed only after it is written in full, saved by writing a temp file
+ * then renaming it atomically.
+ */
+class HistorySegments {
+
+  static final String FILE_NAME = "segments.properties";
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final String KEY_SIZE = "size";
+  private static final String KEY_GENESIS = "genesis";
+  private static final String KEY_SEGMENTS = "segments";
+
+  private final File file;
+  @Getter
+  private final long size;
+  @Getter
+  private final String genesis;
+  private final List<Segment> segments = new ArrayList<>();
+
+  private HistorySegments(File file, long size, String genesis) {
+    this.file = file;
+    this.size = size;
+    this.genesis = genesis;
+  }
+
+  static File fileOf(String historyDir) {
+    return new File(historyDir, FILE_NAME);
+  }
+
+  static boolean exists(String historyDir) {
+    return fileOf(historyDir).exists();
+  }
+
+  static HistorySegments create(File file, long size, String genesis) throws IOException {
+    HistorySegments manifest = new HistorySegments(file, size, genesis);
+    manifest.save();
+    return manifest;
+  }
+
+  /**
+   * Load the manifest of a segmented history.
+   *
+   * @param file manifest file
+   * @return the manifest, null if not exists
+   * @throws IllegalStateException if the manifest is broken
+   */
+  static HistorySegments load(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file),
+        StandardCharsets.UTF_8)) {
+      properties.load(reader);
+      HistorySegments manifest = new HistorySegments(file,
+          Long.parseLong(properties.getProperty(KEY_SIZE)), properties.getProperty(KEY_GENESIS));
+      if (manifest.genesis == null || manifest.size <= 0) {
+        throw new IllegalStateException("genesis or size missing");
+      }
+      String value = properties.getProperty(KEY_SEGMENTS, "");
+      if (!value.isEmpty()) {
+        for (String range : value.split(",")) {
+          String[] bounds = range.split("-");
+          manifest.segments.add(new Segment(Long.parseLong(bounds[0]),
+              Long.parseLong(bounds[1])));
+        }
+      }
+      Collections.sort(manifest.segments);
+      return manifest;
+    } catch (IOException | RuntimeException e) {
+      throw new IllegalStateException(String.format("Segment manifest %s is broken.", file), e);
+    }
+  }
+
+  List<Segment> getSegments() {
+    return Collections.unmodifiableList(segments);
+  }
+
+  /**
+   * The first block of the next segment to produce, the blocks before it are
+   * in complete segments.
+   */
+  long nextBlock() {
+    long next = 0;
+    for (Segment segment : segments) {
+      if (segment.from != next || !isComplete(segment)) {
+        break;
+      }
+      next = segment.to + 1;
+    }
+    return next;
+  }
+
+  boolean isComplete(Segment segment) {
+    return segment.to - segment.from + 1 == size;
+  }
+
+  /**
+   * Drop the segments from the block on, they are produced again.
+   */
+  void truncate(long from) throws IOException {
+    segments.removeIf(segment -> segment.to >= from);
+    save();
+  }
+
+  void add(Segment segment) throws IOException {
+    segments.add(segment);
+    Collections.sort(segments);
+    save();
+  }
+
+  /**
+   * The contiguous segments holding the blocks [from, to].
+   *
+   * @return the segments in ascending order
+   * @throws IllegalStateException if a block is in no segment
+   */
+  List<Segment> cover(long from, long to) {
+    List<Segment> result = new ArrayList<>();
+    long next = from;
+    for (Segment segment : segments) {
+      if (segment.to < next || segment.from > to) {
+        continue;
+      }
+      if (segment.from > next) {
+        break;
+      }
+      result.add(segment);
+      next = segment.to + 1;
+    }
+    if (next <= to) {
+      throw new IllegalStateException(String.format(
+          "Blocks %d to %d are not in the segments of %s.", next, to, file.getParent()));
+    }
+    return result;
+  }
+
+  private void save() throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(KEY_SIZE, String.valueOf(size));
+    properties.setProperty(KEY_GENESIS, genesis);
+    List<String> ranges = new ArrayList<>();
+    segments.forEach(segment -> ranges.add(segment.from + "-" + segment.to));
+    properties.setProperty(KEY_SEGMENTS, String.join(",", ranges));
+    File tmp = new File(file.getPath() + TMP_SUFFIX);
+    try (FileOutputStream out = new FileOutputStream(tmp);
+         Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      properties.store(writer, "history segments, PLEASE DO NOT EDIT!");
+      writer.flush();
+      out.getFD().sync();
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  static class Segment implements Comparable<Segment> {
+    @Getter
+    private final long from;
+    @Getter
+    private final long to;
+
+    Segment(long from, long to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    /**
+     * Dir name of the segment under the history dir, zero padded to sort by block.
+     */
+    String getName() {
+      return String.format("%012d-%012d", from, to);
+    }
+
+    @Override
+    public int compareTo(Segment o) {
+      return Long.compare(from, o.from);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Progress journal of a history merge, kept in the lite database dir.
+ * Records the history being merged, the bak dir, the block numbers checked before
+ * the archive dbs were moved away, the finished steps and the finished tasks of
+ * each step, so a re-run continues from the last saved point.
+ * Saved by writing a temp file then renaming it atomically.
+ */
+@Slf4j(topic = "lite")
+class MergeJournal {
+
+  enum Step { BACKUP, COPY, TRIM, MERGE, DELETE_BAK }
+
+  private static final String FILE_NAME = "merge.journal";
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final String KEY_HISTORY = "history";
+  private static final String KEY_BAK = "bak";
+  private static final String KEY_SNAPSHOT_MIN = "snapshotMinNum";
+  private static final String KEY_HISTORY_MAX = "historyMaxNum";
+  private static final String KEY_SNAPSHOT_MAX = "snapshotMaxNum";
+  private static final String KEY_STEPS = "steps";
+  private static final String KEY_TASKS = "tasks";
+
+  private final File file;
+  @Getter
+  private final String historyDir;
+  @Getter
+  private final String bakDir;
+  @Getter
+  private final DbLite.BlockNumInfo blockNumInfo;
+  private final Set<String> steps = new TreeSet<>();
+  private final Set<String> tasks = new TreeSet<>();
+
+  private MergeJournal(File file, String historyDir, String bakDir,
+      DbLite.BlockNumInfo blockNumInfo) {
+    this.file = file;
+    this.historyDir = historyDir;
+    this.bakDir = bakDir;
+    this.blockNumInfo = blockNumInfo;
+  }
+
+  static File fileOf(String liteDir) {
+    return new File(liteDir, FILE_NAME);
+  }
+
+  static MergeJournal create(File file, String historyDir, String bakDir,
+      DbLite.BlockNumInfo blockNumInfo) throws IOException {
+    MergeJournal journal = new MergeJournal(file, historyDir, bakDir, blockNumInfo);
+    journal.save();
+    return journal;
+  }
+
+  /**
+   * Load the journal of an interrupted merge.
+   *
+   * @param file journal file
+   * @return the journal, null if not exists
+   * @throws IllegalStateException if the journal is broken, the merge can not continue safely
+   */
+  static MergeJournal load(File file) {
+    if (!file.exists()) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file),
+        StandardCharsets.UTF_8)) {
+      properties.load(reader);
+      MergeJournal journal = new MergeJournal(file, properties.getProperty(KEY_HISTORY),
+          properties.getProperty(KEY_BAK), new DbLite.BlockNumInfo(
+          Long.parseLong(properties.getProperty(KEY_SNAPSHOT_MIN)),
+          Long.parseLong(properties.getProperty(KEY_HISTORY_MAX)),
+          Long.parseLong(properties.getProperty(KEY_SNAPSHOT_MAX))));
+      journal.steps.addAll(split(properties.getProperty(KEY_STEPS)));
+      journal.tasks.addAll(split(properties.getProperty(KEY_TASKS)));
+      if (journal.historyDir == null || journal.bakDir == null) {
+        throw new IllegalStateException("history or bak dir missing");
+      }
+      return journal;
+    } catch (IOException | RuntimeException e) {
+      throw new IllegalStateException(String.format(
+          "Merge journal %s is broken, please restore the archive dbs from the bak dir manually.",
+          file), e);
+    }
+  }
+
+  synchronized boolean isDone(Step step) {
+    return steps.contains(step.name());
+  }
+
+  synchronized void complete(Step step) throws IOException {
+    steps.add(step.name());
+    save();
+  }
+
+  synchronized boolean isDone(String task) {
+    return tasks.contains(task);
+  }
+
+  synchronized void complete(String task) throws IOException {
+    tasks.add(task);
+    save();
+  }
+
+  private synchronized void save() throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(KEY_HISTORY, historyDir);
+    properties.setProperty(KEY_BAK, bakDir);
+    properties.setProperty(KEY_SNAPSHOT_MIN, String.valueOf(blockNumInfo.getSnapshotMinNum()));
+    properties.setProperty(KEY_HISTORY_MAX, String.valueOf(blockNumInfo.getHistoryMaxNum()));
+    properties.setProperty(KEY_SNAPSHOT_MAX, String.valueOf(blockNumInfo.getSnapshotMaxNum()));
+    properties.setProperty(KEY_STEPS, String.join(",", steps));
+    properties.setProperty(KEY_TASKS, String.join(",", tasks));
+    File tmp = new File(file.getPath() + TMP_SUFFIX);
+    try (FileOutputStream out = new FileOutputStream(tmp);
+         Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      properties.store(writer, "merge journal, PLEASE DO NOT EDIT!");
+      writer.flush();
+      out.getFD().sync();
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  void delete() {
+    if (file.exists() && !file.delete()) {
+      logger.warn("Delete journal {} failed.", file);
+    }
+  }
+
+  private static Set<String> split(String value) {
+    Set<String> set = new TreeSet<>();
+    if (value != null && !value.isEmpty()) {
+      set.addAll(Arrays.asList(value.split(",")));
+    }
+    return set;
+  }
+}
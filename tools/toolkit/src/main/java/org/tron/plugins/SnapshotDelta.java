@@ -0,0 +1,208 @@
+package org.tron.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.plugins.utils.FileUtils;
+
+/**
+ * The delta between two snapshot generations of the same source.
+ * Table files (.sst, .ldb) are never modified in place, but their numbers are not unique
+ * across copies, so one is taken from the previous snapshot only if it has the same path,
+ * size and sha256 in both, all other files are shipped in the delta. {@value #MANIFEST}
+ * lists every file of the new snapshot with the sha256 of the kept ones, it is written
+ * last, so a delta without it is incomplete.
+ */
+@Slf4j(topic = "lite")
+class SnapshotDelta {
+
+  static final String MANIFEST = "delta.manifest";
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final String PATCH_SUFFIX = ".patch";
+  private static final String BAK_SUFFIX = ".bak";
+  private static final String NO_HASH = "-";
+
+  enum Kind { dir, keep, ship }
+
+  private SnapshotDelta() {
+  }
+
+  /**
+   * Create the delta of the target snapshot against the base snapshot.
+   *
+   * @param base the previous snapshot
+   * @param target the new snapshot
+   * @param deltaDir the dir to write the delta, must be empty
+   * @return what is kept and shipped
+   */
+  static Stats create(Path base, Path target, Path deltaDir) throws IOException {
+    Files.createDirectories(deltaDir);
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(target)) {
+      paths = walk.sorted().collect(Collectors.toList());
+    }
+    Stats stats = new Stats();
+    Path tmp = deltaDir.resolve(MANIFEST + TMP_SUFFIX);
+    try (Writer manifest = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      for (Path path : paths) {
+        if (path.equals(target)) {
+          continue;
+        }
+        String name = nameOf(target, path);
+        if (Files.isDirectory(path)) {
+          Files.createDirectories(deltaDir.resolve(name));
+          write(manifest, Kind.dir, 0, NO_HASH, name);
+          continue;
+        }
+        long size = Files.size(path);
+        Path previous = base.resolve(name);
+        String sha256 = isTable(name) && Files.isRegularFile(previous)
+            && Files.size(previous) == size ? TableFileHashes.sha256(path) : null;
+        if (sha256 != null && sha256.equals(TableFileHashes.sha256(previous))) {
+          write(manifest, Kind.keep, size, sha256, name);
+          stats.add(Kind.keep, size);
+        } else {
+          FileUtils.copy(path, deltaDir.resolve(name));
+          write(manifest, Kind.ship, size, NO_HASH, name);
+          stats.add(Kind.ship, size);
+        }
+      }
+    }
+    Files.move(tmp, deltaDir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE);
+    logger.info("Delta of {} against {}: {}.", target, base, stats);
+    return stats;
+  }
+
+  /**
+   * Patch a database of the base snapshot into the target snapshot.
+   * The patched snapshot is built next to the database, kept files are hard linked from
+   * it, then the two are swapped by renames, so the database is never half patched.
+   *
+   * @param deltaDir the delta
+   * @param dbDir the database of the base snapshot
+   * @return what is kept and shipped
+   * @throws IOException if the delta is incomplete or the database is not its base
+   */
+  static Stats apply(Path deltaDir, Path dbDir) throws IOException {
+    Path manifestFile = deltaDir.resolve(MANIFEST);
+    if (!Files.isRegularFile(manifestFile)) {
+      throw new IOException("delta is incomplete, " + MANIFEST + " not found");
+    }
+    List<Entry> entries = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          // kind size sha256 name, the name may contain spaces
+          String[] fields = line.split(" ", 4);
+          entries.add(new Entry(Kind.valueOf(fields[0]), Long.parseLong(fields[1]),
+              fields[2], fields[3]));
+        }
+      }
+    }
+    // check everything before the first write
+    Stats stats = new Stats();
+    for (Entry entry : entries) {
+      if (entry.kind == Kind.dir) {
+        continue;
+      }
+      Path source = entry.kind == Kind.keep ? dbDir.resolve(entry.name)
+          : deltaDir.resolve(entry.name);
+      if (!Files.isRegularFile(source) || Files.size(source) != entry.size
+          || entry.kind == Kind.keep && !entry.sha256.equals(TableFileHashes.sha256(source))) {
+        throw new IOException(String.format("%s does not match the delta, %s of %d bytes",
+            entry.kind == Kind.keep ? dbDir : deltaDir, entry.name, entry.size));
+      }
+      stats.add(entry.kind, entry.size);
+    }
+    Path patch = dbDir.resolveSibling(dbDir.getFileName() + PATCH_SUFFIX);
+    Path bak = dbDir.resolveSibling(dbDir.getFileName() + BAK_SUFFIX);
+    // left by an interrupted patch, the database itself is untouched until the swap
+    FileUtils.deleteDir(patch.toFile());
+    try {
+      Files.createDirectories(patch);
+      for (Entry entry : entries) {
+        Path dest = patch.resolve(entry.name);
+        if (entry.kind == Kind.dir) {
+          Files.createDirectories(dest);
+        } else {
+          FileUtils.copy(entry.kind == Kind.keep ? dbDir.resolve(entry.name)
+              : deltaDir.resolve(entry.name), dest);
+        }
+      }
+      Files.move(dbDir, bak, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      FileUtils.deleteDir(patch.toFile());
+      throw e;
+    }
+    Files.move(patch, dbDir, StandardCopyOption.ATOMIC_MOVE);
+    FileUtils.deleteDir(bak.toFile());
+    logger.info("Patch {} by {}: {}.", dbDir, deltaDir, stats);
+    return stats;
+  }
+
+  private static boolean isTable(String name) {
+    return name.endsWith(".sst") || name.endsWith(".ldb");
+  }
+
+  private static void write(Writer manifest, Kind kind, long size, String sha256, String name)
+      throws IOException {
+    manifest.write(String.format("%s %d %s %s%n", kind, size, sha256, name));
+  }
+
+  private static String nameOf(Path baseDir, Path file) {
+    return baseDir.relativize(file).toString().replace(File.separatorChar, '/');
+  }
+
+  private static class Entry {
+    private final Kind kind;
+    private final long size;
+    private final String sha256;
+    private final String name;
+
+    private Entry(Kind kind, long size, String sha256, String name) {
+      this.kind = kind;
+      this.size = size;
+      this.sha256 = sha256;
+      this.name = name;
+    }
+  }
+
+  static class Stats {
+    @Getter
+    private long keptFiles;
+    @Getter
+    private long keptBytes;
+    @Getter
+    private long shippedFiles;
+    @Getter
+    private long shippedBytes;
+
+    private void add(Kind kind, long size) {
+      if (kind == Kind.keep) {
+        keptFiles++;
+        keptBytes += size;
+      } else {
+        shippedFiles++;
+        shippedBytes += size;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d files of %d bytes kept, %d files of %d bytes shipped",
+          keptFiles, keptBytes, shippedFiles, shippedBytes);
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package org.tron.plugins;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.MerkleBuilder;
+import org.tron.plugins.utils.Sha256Hash;
+
+/**
+ * The sha256 of every table file (.sst, .ldb) of a store, cached in a manifest next to
+ * the store, {@code <store>}{@value #SUFFIX}. Table files are never modified in place,
+ * a file of the same name, size and modification time as in the manifest is not read
+ * again, so a repeated check only hashes the files written since. The root is the merkle
+ * root of the file names and their hashes in name order.
+ */
+@Slf4j(topic = "db-root")
+class TableFileHashes {
+
+  static final String SUFFIX = ".files.sha256";
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final int BUFFER = 1024 * 1024;
+
+  private TableFileHashes() {
+  }
+
+  /**
+   * Hash the table files of a store, update its manifest.
+   *
+   * @param dbDir parent dir of the store
+   * @param name store name
+   * @param threads hash threads
+   * @param rehash hash every file again and report the ones changed since the manifest
+   * @return the root and counts
+   */
+  static Result hash(Path dbDir, String name, int threads, boolean rehash) throws IOException {
+    Path store = dbDir.resolve(name);
+    Path manifest = dbDir.resolve(name + SUFFIX);
+    Map<String, FileHash> cached = load(manifest);
+    List<Path> tables;
+    try (Stream<Path> files = Files.list(store)) {
+      tables = files.filter(f -> isTable(f.getFileName().toString()))
+          .sorted().collect(Collectors.toList());
+    }
+    Result result = new Result();
+    Map<String, FileHash> current = new TreeMap<>();
+    List<Path> toHash = new ArrayList<>();
+    for (Path table : tables) {
+      String file = table.getFileName().toString();
+      FileHash known = cached.get(file);
+      long size = Files.size(table);
+      long mtime = Files.getLastModifiedTime(table).toMillis();
+      if (!rehash && known != null && known.size == size && known.mtime == mtime) {
+        current.put(file, known);
+        result.reused++;
+      } else {
+        toHash.add(table);
+      }
+    }
+    for (FileHash hashed : hashAll(toHash, threads)) {
+      FileHash known = cached.get(hashed.name);
+      if (known != null && known.size == hashed.size && known.mtime == hashed.mtime
+          && !known.sha256.equals(hashed.sha256)) {
+        result.changed.add(hashed.name);
+      }
+      current.put(hashed.name, hashed);
+      result.hashed++;
+    }
+    save(manifest, current);
+    MerkleBuilder builder = new MerkleBuilder();
+    current.values().forEach(f -> builder.add(f.name.getBytes(StandardCharsets.UTF_8),
+        ByteArray.fromHexString(f.sha256)));
+    result.root = builder.root();
+    result.files = current.size();
+    logger.info("Table files of {}: {} hashed, {} from {}, {} changed.", store,
+        result.hashed, result.reused, manifest, result.changed.size());
+    return result;
+  }
+
+  private static List<FileHash> hashAll(List<Path> files, int threads) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    try {
+      List<Future<FileHash>> futures = new ArrayList<>(files.size());
+      for (Path file : files) {
+        futures.add(executor.submit(() -> hashFile(file)));
+      }
+      List<FileHash> hashes = new ArrayList<>(files.size());
+      for (Future<FileHash> future : futures) {
+        hashes.add(future.get());
+      }
+      return hashes;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+          : new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static FileHash hashFile(Path file) throws IOException {
+    // size and time before the read, a file replaced meanwhile is hashed again next time
+    long size = Files.size(file);
+    long mtime = Files.getLastModifiedTime(file).toMillis();
+    return new FileHash(file.getFileName().toString(), size, mtime, sha256(file));
+  }
+
+  /**
+   * The sha256 of a file, in hex.
+   */
+  static String sha256(Path file) throws IOException {
+    MessageDigest digest = Sha256Hash.newDigest();
+    byte[] buffer = new byte[BUFFER];
+    try (InputStream in = Files.newInputStream(file)) {
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, n);
+      }
+    }
+    return ByteArray.toHexString(digest.digest());
+  }
+
+  private static Map<String, FileHash> load(Path manifest) throws IOException {
+    Map<String, FileHash> hashes = new TreeMap<>();
+    if (!Files.isRegularFile(manifest)) {
+      return hashes;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // sha256 size mtime name
+        String[] fields = line.split(" ", 4);
+        if (fields.length == 4) {
+          hashes.put(fields[3], new FileHash(fields[3], Long.parseLong(fields[1]),
+              Long.parseLong(fields[2]), fields[0]));
+        }
+      }
+    } catch (RuntimeException e) {
+      // a broken cache only costs a full hash
+      logger.warn("Ignore the broken manifest {}, {}.", manifest, e.getMessage());
+      hashes.clear();
+    }
+    return hashes;
+  }
+
+  private static void save(Path manifest, Map<String, FileHash> hashes) throws IOException {
+    Path tmp = manifest.resolveSibling(manifest.getFileName() + TMP_SUFFIX);
+    try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      for (FileHash hash : hashes.values()) {
+        writer.write(String.format("%s %d %d %s%n", hash.sha256, hash.size, hash.mtime,
+            hash.name));
+      }
+    }
+    Files.move(tmp, manifest, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static boolean isTable(String name) {
+    return name.endsWith(".sst") || name.endsWith(".ldb");
+  }
+
+  private static class FileHash {
+    private final String name;
+    private final long size;
+    private final long mtime;
+    private final String sha256;
+
+    private FileHash(String name, long size, long mtime, String sha256) {
+      this.name = name;
+      this.size = size;
+      this.mtime = mtime;
+      this.sha256 = sha256;
+    }
+  }
+
+  static class Result {
+    @Getter
+    private Sha256Hash root;
+    @Getter
+    private int files;
+    @Getter
+    private int hashed;
+    @Getter
+    private int reused;
+    @Getter
+    private final List<String> changed = new ArrayList<>();
+  }
+}
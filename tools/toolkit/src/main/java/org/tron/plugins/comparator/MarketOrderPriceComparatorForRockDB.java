@@ -16,23 +16,31 @@ public  class MarketOrderPriceComparatorForRockDB extends DirectBytewiseComparat
     return "MarketOrderPriceComparator";
   }
 
+  /**
+   * DirectSlice.data().array will throw UnsupportedOperationException, and data() wraps
+   * the slice in a new buffer on every call, so the bytes are read through the slices:
+   * the pair up to the first difference, then the quantities. Nothing is allocated, each
+   * byte read is still one JNI call, at most 108 per compare.
+   * */
   @Override
   public int compare(final DirectSlice a, final DirectSlice b) {
-    return MarketUtils.comparePriceKey(convertDataToBytes(a), convertDataToBytes(b));
+    for (int i = 0; i < MarketUtils.PAIR_LENGTH; i++) {
+      int pairResult = Integer.compare(a.get(i) & 0xFF, b.get(i) & 0xFF);
+      if (pairResult != 0) {
+        return pairResult;
+      }
+    }
+    return MarketUtils.comparePriceOrEmpty(
+        toLong(a, MarketUtils.SELL_QUANTITY_OFFSET), toLong(a, MarketUtils.BUY_QUANTITY_OFFSET),
+        toLong(b, MarketUtils.SELL_QUANTITY_OFFSET), toLong(b, MarketUtils.BUY_QUANTITY_OFFSET));
   }
 
-  /**
-   * DirectSlice.data().array will throw UnsupportedOperationException.
-   * */
-  public byte[] convertDataToBytes(DirectSlice directSlice) {
-    int capacity = directSlice.data().capacity();
-    byte[] bytes = new byte[capacity];
-
-    for (int i = 0; i < capacity; i++) {
-      bytes[i] = directSlice.get(i);
+  private static long toLong(DirectSlice slice, int offset) {
+    long result = 0;
+    for (int i = offset; i < offset + Long.BYTES; i++) {
+      result = (result << 8) | (slice.get(i) & 0xFF);
     }
-
-    return bytes;
+    return result;
   }
 
 }
@@ -0,0 +1,67 @@
+package org.tron.plugins.utils;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import lombok.Getter;
+
+/**
+ * Order sensitive digest of a key/value stream,
+ * chain = SHA256(chain || len(k) || k || len(v) || v), starting from 32 zero bytes.
+ * Any missing, extra, reordered or changed entry changes the chain.
+ */
+public class ChainedDigest {
+
+  private final MessageDigest digest = Sha256Hash.newDigest();
+  private final byte[] length = new byte[Integer.BYTES];
+  private byte[] chain;
+  @Getter
+  private long count;
+
+  public ChainedDigest() {
+    this(new byte[Sha256Hash.LENGTH], 0);
+  }
+
+  /**
+   * Continue a chain.
+   *
+   * @param chain chain so far
+   * @param count entries so far
+   */
+  public ChainedDigest(byte[] chain, long count) {
+    this.chain = chain.clone();
+    this.count = count;
+  }
+
+  public void update(byte[] key, byte[] value) {
+    digest.update(chain);
+    updateWithLength(key);
+    updateWithLength(value);
+    chain = digest.digest();
+    count++;
+  }
+
+  private void updateWithLength(byte[] bytes) {
+    length[0] = (byte) (bytes.length >>> 24);
+    length[1] = (byte) (bytes.length >>> 16);
+    length[2] = (byte) (bytes.length >>> 8);
+    length[3] = (byte) bytes.length;
+    digest.update(length);
+    digest.update(bytes);
+  }
+
+  public byte[] getChain() {
+    return chain.clone();
+  }
+
+  /**
+   * Whether the other stream has the same entries in the same order.
+   */
+  public boolean matches(ChainedDigest other) {
+    return count == other.count && Arrays.equals(chain, other.chain);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d:%s", count, ByteArray.toHexString(chain));
+  }
+}
@@ -111,30 +111,36 @@ public class DBUtils {
     return options;
   }
 
+  /**
+   * Options of the db, with the market comparator for the market pair price store.
+   *
+   * @param db db path
+   * @param forBulkLoad tune for bulk load
+   * @return options, the caller closes it
+   */
+  public static Options newRocksDbOptions(Path db, boolean forBulkLoad) {
+    Options options = newDefaultRocksDbOptions(forBulkLoad);
+    if (MARKET_PAIR_PRICE_TO_ORDER.equalsIgnoreCase(db.getFileName().toString())) {
+      options.setComparator(new MarketOrderPriceComparatorForRockDB(new ComparatorOptions()));
+    }
+    return options;
+  }
+
   public static RocksDB newRocksDb(Path db) throws RocksDBException {
-    try (Options options = newDefaultRocksDbOptions(false)) {
-      if (MARKET_PAIR_PRICE_TO_ORDER.equalsIgnoreCase(db.getFileName().toString())) {
-        options.setComparator(new MarketOrderPriceComparatorForRockDB(new ComparatorOptions()));
-      }
+    try (Options options = newRocksDbOptions(db, false)) {
       return  RocksDB.open(options, db.toString());
     }
   }
 
   public static RocksDB newRocksDbForBulkLoad(Path db) throws RocksDBException {
-    try (Options options = newDefaultRocksDbOptions(true)) {
-      if (MARKET_PAIR_PRICE_TO_ORDER.equalsIgnoreCase(db.getFileName().toString())) {
-        options.setComparator(new MarketOrderPriceComparatorForRockDB(new ComparatorOptions()));
-      }
+    try (Options options = newRocksDbOptions(db, true)) {
       return  RocksDB.open(options, db.toString());
     }
   }
 
 
   public static RocksDB newRocksDbReadOnly(Path db) throws RocksDBException {
-    try (Options options = newDefaultRocksDbOptions(false)) {
-      if (MARKET_PAIR_PRICE_TO_ORDER.equalsIgnoreCase(db.getFileName().toString())) {
-        options.setComparator(new MarketOrderPriceComparatorForRockDB(new ComparatorOptions()));
-      }
+    try (Options options = newRocksDbOptions(db, false)) {
       return  RocksDB.openReadOnly(options, db.toString());
     }
   }
@@ -172,8 +172,8 @@ public class FileUtils {
 
   public static void copy(Path source, Path dest) {
     try {
-      // create hard link when file is .sst
-      if (source.toString().endsWith(".sst")) {
+      // create hard link when file is .sst or .ldb, table files are never modified in place
+      if (source.toString().endsWith(".sst") || source.toString().endsWith(".ldb")) {
         try {
           java.nio.file.Files.createLink(dest, source);
         } catch (FileSystemException e) {
@@ -1,12 +1,12 @@
 package org.tron.plugins.utils;
 
-import java.math.BigInteger;
-import org.tron.plugins.utils.ByteArray;
-
 public class MarketUtils {
 
   public static final int TOKEN_ID_LENGTH = ByteArray
       .fromString(Long.toString(Long.MAX_VALUE)).length; // 19
+  public static final int PAIR_LENGTH = TOKEN_ID_LENGTH * 2;
+  public static final int SELL_QUANTITY_OFFSET = PAIR_LENGTH;
+  public static final int BUY_QUANTITY_OFFSET = PAIR_LENGTH + Long.BYTES;
 
 
 
@@ -68,43 +68,31 @@ public class MarketUtils {
   }
 
 
+  /**
+   * Compare two price keys in place, the pair bytewise, then the price.
+   * No array is allocated, it runs on every compaction and seek of the market store.
+   */
   public static int comparePriceKey(byte[] o1, byte[] o2) {
     //compare pair
-    byte[] pair1 = new byte[TOKEN_ID_LENGTH * 2];
-    byte[] pair2 = new byte[TOKEN_ID_LENGTH * 2];
-
-    System.arraycopy(o1, 0, pair1, 0, TOKEN_ID_LENGTH * 2);
-    System.arraycopy(o2, 0, pair2, 0, TOKEN_ID_LENGTH * 2);
-
-    int pairResult = ByteArray.compareUnsigned(pair1, pair2);
-    if (pairResult != 0) {
-      return pairResult;
+    for (int i = 0; i < PAIR_LENGTH; i++) {
+      int pairResult = Integer.compare(o1[i] & 0xFF, o2[i] & 0xFF);
+      if (pairResult != 0) {
+        return pairResult;
+      }
     }
 
     //compare price
-    byte[] getSellTokenQuantity1 = new byte[8];
-    byte[] getBuyTokenQuantity1 = new byte[8];
-
-    byte[] getSellTokenQuantity2 = new byte[8];
-    byte[] getBuyTokenQuantity2 = new byte[8];
-
-    int longByteNum = 8;
-
-    System.arraycopy(o1, TOKEN_ID_LENGTH + TOKEN_ID_LENGTH,
-        getSellTokenQuantity1, 0, longByteNum);
-    System.arraycopy(o1, TOKEN_ID_LENGTH + TOKEN_ID_LENGTH + longByteNum,
-        getBuyTokenQuantity1, 0, longByteNum);
-
-    System.arraycopy(o2, TOKEN_ID_LENGTH + TOKEN_ID_LENGTH,
-        getSellTokenQuantity2, 0, longByteNum);
-    System.arraycopy(o2, TOKEN_ID_LENGTH + TOKEN_ID_LENGTH + longByteNum,
-        getBuyTokenQuantity2, 0, longByteNum);
-
-    long sellTokenQuantity1 = ByteArray.toLong(getSellTokenQuantity1);
-    long buyTokenQuantity1 = ByteArray.toLong(getBuyTokenQuantity1);
-    long sellTokenQuantity2 = ByteArray.toLong(getSellTokenQuantity2);
-    long buyTokenQuantity2 = ByteArray.toLong(getBuyTokenQuantity2);
+    return comparePriceOrEmpty(
+        toLong(o1, SELL_QUANTITY_OFFSET), toLong(o1, BUY_QUANTITY_OFFSET),
+        toLong(o2, SELL_QUANTITY_OFFSET), toLong(o2, BUY_QUANTITY_OFFSET));
+  }
 
+  /**
+   * Compare the prices of two keys of the same pair, an empty price, of a zero quantity,
+   * is the smallest.
+   */
+  public static int comparePriceOrEmpty(long sellTokenQuantity1, long buyTokenQuantity1,
+                                        long sellTokenQuantity2, long buyTokenQuantity2) {
     if ((sellTokenQuantity1 == 0 || buyTokenQuantity1 == 0)
         && (sellTokenQuantity2 == 0 || buyTokenQuantity2 == 0)) {
       return 0;
@@ -120,7 +108,14 @@ public class MarketUtils {
 
     return comparePrice(sellTokenQuantity1, buyTokenQuantity1,
         sellTokenQuantity2, buyTokenQuantity2);
+  }
 
+  private static long toLong(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = offset; i < offset + Long.BYTES; i++) {
+      result = (result << 8) | (bytes[i] & 0xFF);
+    }
+    return result;
   }
 
   /**
@@ -134,15 +129,31 @@ public class MarketUtils {
           Math.multiplyExact(price2BuyQuantity, price1SellQuantity));
 
     } catch (ArithmeticException ex) {
-      // do nothing here, because we will use BigInteger to compute again
+      // do nothing here, because we will compare the 128 bits products again
     }
 
-    BigInteger price1BuyQuantityBI = BigInteger.valueOf(price1BuyQuantity);
-    BigInteger price1SellQuantityBI = BigInteger.valueOf(price1SellQuantity);
-    BigInteger price2BuyQuantityBI = BigInteger.valueOf(price2BuyQuantity);
-    BigInteger price2SellQuantityBI = BigInteger.valueOf(price2SellQuantity);
+    long high1 = multiplyHigh(price1BuyQuantity, price2SellQuantity);
+    long high2 = multiplyHigh(price2BuyQuantity, price1SellQuantity);
+    if (high1 != high2) {
+      return Long.compare(high1, high2);
+    }
+    return Long.compareUnsigned(price1BuyQuantity * price2SellQuantity,
+        price2BuyQuantity * price1SellQuantity);
+  }
 
-    return price1BuyQuantityBI.multiply(price2SellQuantityBI)
-        .compareTo(price2BuyQuantityBI.multiply(price1SellQuantityBI));
+  /**
+   * The high 64 bits of the signed 128 bits product, Math.multiplyHigh of java 9.
+   */
+  static long multiplyHigh(long x, long y) {
+    long x1 = x >> 32;
+    long x2 = x & 0xFFFFFFFFL;
+    long y1 = y >> 32;
+    long y2 = y & 0xFFFFFFFFL;
+    long z2 = x2 * y2;
+    long t = x1 * y2 + (z2 >>> 32);
+    long z1 = t & 0xFFFFFFFFL;
+    long z0 = t >> 32;
+    z1 += x2 * y1;
+    return x1 * y1 + z0 + (z1 >> 32);
   }
 }
@@ -0,0 +1,129 @@
+package org.tron.plugins.utils;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import lombok.Getter;
+
+/**
+ * Streaming builder of the same root as {@link MerkleRoot#root}.
+ * Only the roots of the complete subtrees pending a sibling are kept, at most one per
+ * level, so memory is O(log n) whatever the number of leaves. A node without a sibling
+ * is promoted as is, as {@link MerkleRoot} does, which makes the root the right-to-left
+ * fold of the pending subtrees. One digest and the pending buffers are reused, no
+ * allocation per leaf.
+ *
+ * <p>A builder may start at a leaf offset of the whole tree, its subtrees are then aligned
+ * to the whole tree, a subtree of 2^k leaves always starts at a multiple of 2^k. So the
+ * builders of consecutive key ranges are hashed apart and {@link #append}ed in order to
+ * the root of the sequential build, bit for bit.
+ */
+public class MerkleBuilder {
+
+  private static final int MAX_LEVELS = 64;
+
+  private final MessageDigest digest = Sha256Hash.newDigest();
+  // unaligned at both ends, a range holds at most two subtrees per level
+  private final byte[][] hashes = new byte[MAX_LEVELS * 2 + 1][Sha256Hash.LENGTH];
+  private final int[] levels = new int[MAX_LEVELS * 2 + 1];
+  private final long[] starts = new long[MAX_LEVELS * 2 + 1];
+  @Getter
+  private final long offset;
+  private int size;
+  @Getter
+  private long count;
+
+  public MerkleBuilder() {
+    this(0);
+  }
+
+  /**
+   * A builder of the leaves from the offset of the whole tree on.
+   *
+   * @param offset index of the first leaf in the whole tree
+   */
+  public MerkleBuilder(long offset) {
+    this.offset = offset;
+  }
+
+  /**
+   * Add the leaf of an entry, the hash of the key followed by the value.
+   */
+  public void add(byte[] key, byte[] value) {
+    digest.update(key);
+    digest.update(value);
+    finish(hashes[size]);
+    push(0, offset + count);
+    count++;
+  }
+
+  /**
+   * Add a leaf hash.
+   */
+  public void add(byte[] hash) {
+    System.arraycopy(hash, 0, hashes[size], 0, Sha256Hash.LENGTH);
+    push(0, offset + count);
+    count++;
+  }
+
+  /**
+   * Append the leaves of the builder of the next range.
+   *
+   * @param next builder starting right after the last leaf of this one
+   * @throws IllegalArgumentException if the next builder does not start there
+   */
+  public void append(MerkleBuilder next) {
+    if (next.offset != offset + count) {
+      throw new IllegalArgumentException(String.format(
+          "next builder starts at leaf %d, expected %d", next.offset, offset + count));
+    }
+    for (int i = 0; i < next.size; i++) {
+      System.arraycopy(next.hashes[i], 0, hashes[size], 0, Sha256Hash.LENGTH);
+      push(next.levels[i], next.starts[i]);
+    }
+    count += next.count;
+  }
+
+  /**
+   * The root of the leaves added so far, {@link Sha256Hash#ZERO_HASH} if none.
+   *
+   * @throws IllegalStateException if the builder does not start at the first leaf
+   */
+  public Sha256Hash root() {
+    if (offset != 0) {
+      throw new IllegalStateException("not the whole tree, starts at leaf " + offset);
+    }
+    if (size == 0) {
+      return Sha256Hash.ZERO_HASH;
+    }
+    byte[] root = hashes[size - 1].clone();
+    for (int i = size - 2; i >= 0; i--) {
+      digest.update(hashes[i]);
+      digest.update(root);
+      finish(root);
+    }
+    return Sha256Hash.wrap(root);
+  }
+
+  private void push(int level, long start) {
+    levels[size] = level;
+    starts[size] = start;
+    size++;
+    // merge the siblings, the left one of a level starts at a multiple of twice its size
+    while (size > 1 && levels[size - 1] == levels[size - 2]
+        && (starts[size - 2] & ((2L << levels[size - 2]) - 1)) == 0) {
+      digest.update(hashes[size - 2]);
+      digest.update(hashes[size - 1]);
+      finish(hashes[size - 2]);
+      levels[size - 2]++;
+      size--;
+    }
+  }
+
+  private void finish(byte[] out) {
+    try {
+      digest.digest(out, 0, Sha256Hash.LENGTH);
+    } catch (DigestException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
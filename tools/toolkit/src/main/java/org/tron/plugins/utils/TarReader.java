@@ -0,0 +1,162 @@
+package org.tron.plugins.utils;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import lombok.Getter;
+
+/**
+ * A minimal ustar reader for archives of {@link TarWriter}, reads entries in sequence.
+ */
+public class TarReader implements Closeable {
+
+  private static final int BLOCK = TarWriter.BLOCK;
+
+  private final InputStream in;
+  private long remaining;
+  private long padding;
+
+  public TarReader(InputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * Skip the rest of the current entry and read the next header.
+   *
+   * @return the next entry, null at the end of the archive
+   */
+  public Entry next() throws IOException {
+    skip(remaining + padding);
+    remaining = 0;
+    padding = 0;
+    byte[] header = new byte[BLOCK];
+    if (!readFully(header, true)) {
+      return null;
+    }
+    if (isZero(header)) {
+      return null;
+    }
+    long expected = parseOctal(header, 148, 8);
+    for (int i = 148; i < 156; i++) {
+      header[i] = ' ';
+    }
+    if (TarWriter.checksum(header) != expected) {
+      throw new IOException("broken tar header, checksum mismatch");
+    }
+    String name = cString(header, 0, 100);
+    String prefix = cString(header, 345, 155);
+    if (!prefix.isEmpty()) {
+      name = prefix + "/" + name;
+    }
+    long size;
+    if ((header[124] & 0x80) != 0) {
+      size = 0;
+      for (int i = 128; i < 136; i++) {
+        size = size << 8 | (header[i] & 0xff);
+      }
+    } else {
+      size = parseOctal(header, 124, 12);
+    }
+    boolean directory = header[156] == '5' || name.endsWith("/");
+    if (directory) {
+      size = 0;
+    }
+    remaining = size;
+    padding = (BLOCK - size % BLOCK) % BLOCK;
+    return new Entry(name, size, directory);
+  }
+
+  /**
+   * Read the content of the current entry.
+   *
+   * @return bytes read, -1 at the end of the entry
+   */
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (remaining <= 0) {
+      return -1;
+    }
+    int n = in.read(b, off, (int) Math.min(len, remaining));
+    if (n < 0) {
+      throw new EOFException("truncated tar entry");
+    }
+    remaining -= n;
+    return n;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private void skip(long n) throws IOException {
+    byte[] buffer = new byte[BLOCK * 16];
+    while (n > 0) {
+      int r = in.read(buffer, 0, (int) Math.min(buffer.length, n));
+      if (r < 0) {
+        throw new EOFException("truncated tar entry");
+      }
+      n -= r;
+    }
+  }
+
+  private boolean readFully(byte[] b, boolean eofAllowed) throws IOException {
+    int off = 0;
+    while (off < b.length) {
+      int n = in.read(b, off, b.length - off);
+      if (n < 0) {
+        if (off == 0 && eofAllowed) {
+          return false;
+        }
+        throw new EOFException("truncated tar header");
+      }
+      off += n;
+    }
+    return true;
+  }
+
+  private static boolean isZero(byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String cString(byte[] b, int offset, int length) {
+    int end = offset;
+    while (end < offset + length && b[end] != 0) {
+      end++;
+    }
+    return new String(b, offset, end - offset, StandardCharsets.UTF_8);
+  }
+
+  private static long parseOctal(byte[] b, int offset, int length) {
+    long value = 0;
+    for (int i = offset; i < offset + length; i++) {
+      if (b[i] >= '0' && b[i] <= '7') {
+        value = value * 8 + (b[i] - '0');
+      } else if (value > 0 || (b[i] != ' ' && b[i] != 0)) {
+        break;
+      }
+    }
+    return value;
+  }
+
+  public static class Entry {
+    @Getter
+    private final String name;
+    @Getter
+    private final long size;
+    @Getter
+    private final boolean directory;
+
+    Entry(String name, long size, boolean directory) {
+      this.name = name;
+      this.size = size;
+      this.directory = directory;
+    }
+  }
+}
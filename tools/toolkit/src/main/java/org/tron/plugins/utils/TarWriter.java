@@ -0,0 +1,158 @@
+package org.tron.plugins.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A minimal ustar writer, entries are written in sequence and never buffered.
+ * Sizes beyond the 11 octal digits of ustar are written in the base-256 form
+ * understood by GNU tar.
+ */
+public class TarWriter implements Closeable {
+
+  static final int BLOCK = 512;
+  private static final long MAX_OCTAL_SIZE = 077777777777L;
+  private static final byte TYPE_FILE = '0';
+  private static final byte TYPE_DIRECTORY = '5';
+
+  private final OutputStream out;
+  private long remaining;
+  private long entrySize;
+  private boolean inEntry;
+  private boolean finished;
+
+  public TarWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Start a file entry, its content must be written in full before the next entry.
+   *
+   * @param name path in the archive, '/' separated
+   * @param size content bytes
+   * @param mtime modification time, seconds
+   */
+  public void putFile(String name, long size, long mtime) throws IOException {
+    closeEntry();
+    writeHeader(name, size, mtime, TYPE_FILE);
+    remaining = size;
+    entrySize = size;
+    inEntry = true;
+  }
+
+  public void putDirectory(String name, long mtime) throws IOException {
+    closeEntry();
+    writeHeader(name.endsWith("/") ? name : name + "/", 0, mtime, TYPE_DIRECTORY);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (len > remaining) {
+      throw new IOException(String.format("entry overflow, %d bytes left, %d to write",
+          remaining, len));
+    }
+    out.write(b, off, len);
+    remaining -= len;
+  }
+
+  /**
+   * End the current file entry, pad it to a whole block.
+   */
+  public void closeEntry() throws IOException {
+    if (!inEntry) {
+      return;
+    }
+    if (remaining != 0) {
+      throw new IOException(String.format("entry underflow, %d bytes left", remaining));
+    }
+    int pad = (int) ((BLOCK - entrySize % BLOCK) % BLOCK);
+    out.write(new byte[pad]);
+    inEntry = false;
+  }
+
+  /**
+   * End the archive by two zero blocks, the stream is flushed but left open.
+   */
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    closeEntry();
+    out.write(new byte[BLOCK * 2]);
+    out.flush();
+    finished = true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    finish();
+    out.close();
+  }
+
+  private void writeHeader(String name, long size, long mtime, byte type) throws IOException {
+    byte[] header = new byte[BLOCK];
+    byte[] path = name.getBytes(StandardCharsets.UTF_8);
+    if (path.length <= 100) {
+      System.arraycopy(path, 0, header, 0, path.length);
+    } else {
+      // split into prefix and name at a '/'
+      int split = -1;
+      for (int i = path.length - 1; i >= 0; i--) {
+        if (path[i] == '/' && i <= 155 && path.length - i - 1 <= 100) {
+          split = i;
+          break;
+        }
+      }
+      if (split <= 0) {
+        throw new IOException("path too long for ustar: " + name);
+      }
+      System.arraycopy(path, split + 1, header, 0, path.length - split - 1);
+      System.arraycopy(path, 0, header, 345, split);
+    }
+    octal(header, 100, 8, type == TYPE_DIRECTORY ? 0755 : 0644);
+    octal(header, 108, 8, 0);
+    octal(header, 116, 8, 0);
+    if (size <= MAX_OCTAL_SIZE) {
+      octal(header, 124, 12, size);
+    } else {
+      header[124] = (byte) 0x80;
+      for (int i = 0; i < 8; i++) {
+        header[135 - i] = (byte) (size >>> (8 * i));
+      }
+    }
+    octal(header, 136, 12, mtime);
+    header[156] = type;
+    System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+    header[263] = '0';
+    header[264] = '0';
+    // checksum is computed with its own field as spaces
+    for (int i = 148; i < 156; i++) {
+      header[i] = ' ';
+    }
+    octal(header, 148, 7, checksum(header));
+    header[155] = ' ';
+    out.write(header);
+  }
+
+  static long checksum(byte[] header) {
+    long sum = 0;
+    for (byte b : header) {
+      sum += b & 0xff;
+    }
+    return sum;
+  }
+
+  /**
+   * Write a zero padded octal number followed by a NUL into the field.
+   */
+  private static void octal(byte[] header, int offset, int length, long value) {
+    String s = Long.toOctalString(value);
+    int digits = length - 1;
+    for (int i = 0; i < digits; i++) {
+      int from = s.length() - digits + i;
+      header[offset + i] = (byte) (from < 0 ? '0' : s.charAt(from));
+    }
+    header[offset + digits] = 0;
+  }
+}
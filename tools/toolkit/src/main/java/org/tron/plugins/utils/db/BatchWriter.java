@@ -0,0 +1,147 @@
+package org.tron.plugins.utils.db;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Buffer puts and deletes for one db and write them through
+ * {@link DBInterface#updateByBatch(Map)}, flush automatically once
+ * the buffered rows reach the count or bytes limit.
+ *
+ * <p>The count limit adapts to the {@link WritePressure} of the db: it grows additively
+ * while writes go at full speed and halves on a slowdown, and the writer waits
+ * with backoff while writes are stopped, so bulk writes stay close to the rate
+ * the disk sustains. The time spent waiting is reported as stall time.
+ * Buffered rows are keyed by content, {@link #get} reads them before the db.
+ * Not thread safe, use one writer per thread.
+ */
+@Slf4j(topic = "db")
+public class BatchWriter implements Closeable {
+
+  public static final int DEFAULT_MAX_COUNT = 10_000;
+  public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024L;
+
+  private static final int MIN_COUNT = 64;
+  private static final long SLOWDOWN_MILLIS = 10;
+  private static final long MAX_BACKOFF_MILLIS = 1000;
+  private static final long MAX_STOP_MILLIS = 60_000;
+
+  private final DBInterface db;
+  private final int maxCount;
+  private final long maxBytes;
+  private int count;
+
+  private Map<ByteBuffer, byte[]> rows = new LinkedHashMap<>();
+  private long bytes = 0L;
+
+  @Getter
+  private long written = 0L;
+  @Getter
+  private long stallMillis = 0L;
+
+  public BatchWriter(DBInterface db) {
+    this(db, DEFAULT_MAX_COUNT, DEFAULT_MAX_BYTES);
+  }
+
+  public BatchWriter(DBInterface db, int maxCount, long maxBytes) {
+    this.db = db;
+    this.maxCount = maxCount;
+    this.maxBytes = maxBytes;
+    this.count = maxCount;
+  }
+
+  public void put(byte[] key, byte[] value) {
+    Objects.requireNonNull(value, "value");
+    rows.put(ByteBuffer.wrap(key), value);
+    bytes += key.length + value.length;
+    maybeFlush();
+  }
+
+  public void delete(byte[] key) {
+    rows.put(ByteBuffer.wrap(key), null);
+    bytes += key.length;
+    maybeFlush();
+  }
+
+  /**
+   * Read a key through the buffer, so a writer reads its own writes.
+   *
+   * @param key key
+   * @return the buffered value, null if buffered as deleted, else the value in the db
+   */
+  public byte[] get(byte[] key) {
+    ByteBuffer buffered = ByteBuffer.wrap(key);
+    if (rows.containsKey(buffered)) {
+      return rows.get(buffered);
+    }
+    return db.get(key);
+  }
+
+  private void maybeFlush() {
+    if (rows.size() >= count || bytes >= maxBytes) {
+      flush();
+    }
+  }
+
+  /**
+   * Write the buffered rows in one batch.
+   */
+  public void flush() {
+    if (rows.isEmpty()) {
+      return;
+    }
+    pace();
+    Map<byte[], byte[]> batch = new LinkedHashMap<>(rows.size() * 2);
+    rows.forEach((key, value) -> batch.put(key.array(), value));
+    db.updateByBatch(batch);
+    written += rows.size();
+    rows = new LinkedHashMap<>();
+    bytes = 0L;
+  }
+
+  /**
+   * Adjust the count limit and wait by the write pressure before a batch,
+   * additive increase, multiplicative decrease.
+   */
+  private void pace() {
+    WritePressure pressure = db.getWritePressure();
+    if (pressure == WritePressure.NONE) {
+      count = Math.min(maxCount, count + Math.max(1, maxCount / 16));
+      return;
+    }
+    count = Math.max(Math.min(MIN_COUNT, maxCount), count / 2);
+    long start = System.currentTimeMillis();
+    try {
+      if (pressure == WritePressure.SLOWDOWN) {
+        TimeUnit.MILLISECONDS.sleep(SLOWDOWN_MILLIS);
+      } else {
+        // the engine blocks a stopped write by itself, bound the wait then let it
+        long backoff = 1;
+        while (db.getWritePressure() == WritePressure.STOP
+            && System.currentTimeMillis() - start < MAX_STOP_MILLIS) {
+          TimeUnit.MILLISECONDS.sleep(backoff);
+          backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      stallMillis += System.currentTimeMillis() - start;
+    }
+  }
+
+  @Override
+  public void close() {
+    flush();
+    if (stallMillis > 0) {
+      logger.info("Write {} stalled {} ms for {} rows.", db.getName(), stallMillis, written);
+    }
+  }
+}
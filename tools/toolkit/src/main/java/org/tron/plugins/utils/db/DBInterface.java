@@ -2,6 +2,8 @@ package org.tron.plugins.utils.db;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
 
 
 public interface DBInterface extends Closeable {
@@ -12,10 +14,77 @@ public interface DBInterface extends Closeable {
 
   void delete(byte[] key);
 
+  /**
+   * Apply all rows in one atomic write, a null value means delete.
+   *
+   * @param rows keys and values in write order
+   */
+  void updateByBatch(Map<byte[], byte[]> rows);
+
+  /**
+   * Delete all keys of the range [start, end), natively where the engine allows.
+   *
+   * @param start start key, inclusive, null for the first key
+   * @param end end key, exclusive, null for past the last key
+   */
+  void deleteRange(byte[] start, byte[] end);
+
   DBIterator iterator();
 
+  /**
+   * Get the current write pressure of the engine.
+   *
+   * @return pressure, {@link WritePressure#NONE} if the engine does not report it
+   */
+  WritePressure getWritePressure();
+
+  /**
+   * Get the approximate bytes on disk of the key range [start, limit).
+   *
+   * @param start start key, inclusive
+   * @param limit limit key, exclusive
+   * @return approximate bytes, or -1 if the engine does not support it
+   */
+  long getApproximateSize(byte[] start, byte[] limit);
+
+  /**
+   * Count the keys exactly, in parallel and without reading values where the engine allows.
+   *
+   * @return number of keys
+   */
   long size();
 
+  /**
+   * Count the keys of one range exactly, without reading values where the engine allows.
+   *
+   * @param range key range
+   * @return number of keys in the range
+   */
+  long count(KeyRange range);
+
+  /**
+   * Estimate the number of keys from the engine's metadata, without a full scan.
+   *
+   * @return estimated number of keys
+   */
+  long estimatedSize();
+
+  /**
+   * Get the approximate bytes on disk of each level.
+   *
+   * @return bytes by level, in level order
+   */
+  Map<Integer, Long> getLevelSizes();
+
+  /**
+   * Write a consistent image of the db to a new dir by the engine's native checkpoint.
+   *
+   * @param dest dir of the image, must not exist
+   * @return true if written, false if the engine has no native checkpoint
+   * @throws IOException checkpoint error
+   */
+  boolean checkpoint(Path dest) throws IOException;
+
   void close() throws IOException;
 
   String getName();
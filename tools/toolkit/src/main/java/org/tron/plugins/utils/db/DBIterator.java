@@ -35,6 +35,15 @@ public interface DBIterator extends Iterator<Map.Entry<byte[], byte[]>>, Closeab
    */
   void seekToLast();
 
+  /**
+   * Position at the last key in the source that is before target.
+   * The iterator is valid() after this call iff the source contains
+   * an entry that comes before target.
+   *
+   * @param key target
+   */
+  void seekBefore(byte[] key);
+
   boolean hasNext();
 
   /**
@@ -5,8 +5,15 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import lombok.extern.slf4j.Slf4j;
 import org.rocksdb.RocksDBException;
 import org.tron.plugins.utils.DBUtils;
@@ -19,7 +26,11 @@ public class DbTool {
   private static final String KEY_ENGINE = "ENGINE";
   private static final String ENGINE_FILE = "engine.properties";
   private static final String FILE_SEPARATOR = File.separator;
+  private static final String CURRENT_FILE = "CURRENT";
   private static final String ROCKSDB = "ROCKSDB";
+  private static final long MB = 1024 * 1024;
+
+  public static final int CPUS = Runtime.getRuntime().availableProcessors();
 
   private static final Map<String, DBInterface> dbMap = Maps.newConcurrentMap();
 
@@ -74,7 +85,7 @@ public class DbTool {
    * @throws IOException leveldb error
    * @throws RocksDBException rocksdb error
    */
-  public static DBInterface getDB(String sourceDir, String dbName, DbType type)
+  public static synchronized DBInterface getDB(String sourceDir, String dbName, DbType type)
       throws IOException, RocksDBException {
     Path path = Paths.get(sourceDir, dbName);
     if (dbMap.containsKey(path.toString())) {
@@ -122,6 +133,40 @@ public class DbTool {
     }
   }
 
+  /**
+   * Copy a store into the dest dir as one consistent image. A RocksDB store is copied by
+   * the native checkpoint of its opened db, other stores and plain dirs file by file,
+   * table files hard linked in both.
+   *
+   * @param sourceDir the parent path of the store
+   * @param destDir the parent path of the copy
+   * @param dbName store dir name
+   *
+   * @throws IOException copy error
+   * @throws RocksDBException rocksdb error
+   */
+  public static void copyStore(String sourceDir, String destDir, String dbName)
+      throws IOException, RocksDBException {
+    Path source = Paths.get(sourceDir, dbName);
+    if (!source.toFile().exists()) {
+      return;
+    }
+    if (!FileUtils.createDirIfNotExists(destDir)) {
+      throw new IOException(String.format("dest %s create fail", destDir));
+    }
+    Path dest = Paths.get(destDir, dbName);
+    if (getDbType(sourceDir, dbName) == DbType.RocksDB
+        && source.resolve(CURRENT_FILE).toFile().exists()
+        && getDB(sourceDir, dbName).checkpoint(dest)) {
+      // the checkpoint holds the files of the engine only
+      if (source.resolve(ENGINE_FILE).toFile().exists()) {
+        FileUtils.copy(source.resolve(ENGINE_FILE), dest.resolve(ENGINE_FILE));
+      }
+      return;
+    }
+    FileUtils.copyDir(Paths.get(sourceDir), Paths.get(destDir), dbName);
+  }
+
   /**
    * Close db.
    *
@@ -161,6 +206,135 @@ public class DbTool {
     }
   }
 
+  /**
+   * Split the db into at most {@code parts} balanced key ranges.
+   *
+   * @param db db to split
+   * @param parts expected number of ranges
+   * @return ordered, disjoint ranges covering the whole db
+   * @throws IOException iterator close error
+   */
+  public static List<KeyRange> splitRanges(DBInterface db, int parts) throws IOException {
+    return KeyRangeSplitter.split(db, parts);
+  }
+
+  /**
+   * Scan the whole db in parallel, one range per cpu.
+   *
+   * @see #scan(DBInterface, List, int, RangeVisitor)
+   */
+  public static <R> List<R> scan(DBInterface db, RangeVisitor<R> visitor) throws IOException {
+    return scan(db, splitRanges(db, CPUS), CPUS, visitor);
+  }
+
+  /**
+   * Visit each range with a bounded iterator on a worker pool.
+   *
+   * @param db db to scan
+   * @param ranges ranges to visit
+   * @param threads max worker threads
+   * @param visitor range visitor
+   * @return the results of the ranges, in the order of ranges
+   */
+  public static <R> List<R> scan(DBInterface db, List<KeyRange> ranges, int threads,
+                                 RangeVisitor<R> visitor) {
+    return run(db, ranges, threads, (index, range) -> {
+      try (DBIterator iterator = new RangeIterator(db.iterator(), range)) {
+        iterator.seekToFirst();
+        return visitor.visit(range, iterator);
+      }
+    });
+  }
+
+  /**
+   * Count the keys of each range exactly on a worker pool, no iterator is opened for it.
+   *
+   * @param db db to count
+   * @param ranges ranges to count
+   * @param threads max worker threads
+   * @return the counts of the ranges, in the order of ranges
+   * @see DBInterface#count(KeyRange)
+   */
+  public static List<Long> count(DBInterface db, List<KeyRange> ranges, int threads) {
+    return run(db, ranges, threads, (index, range) -> db.count(range));
+  }
+
+  /**
+   * Run a task per range on a worker pool.
+   *
+   * @param db db of the ranges
+   * @param ranges ranges to run on
+   * @param threads max worker threads
+   * @param task range task
+   * @return the results of the ranges, in the order of ranges
+   */
+  public static <R> List<R> run(DBInterface db, List<KeyRange> ranges, int threads,
+                                RangeTask<R> task) {
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threads, ranges.size())));
+    try {
+      List<Future<R>> futures = new ArrayList<>(ranges.size());
+      for (int i = 0; i < ranges.size(); i++) {
+        int index = i;
+        futures.add(executor.submit(() -> task.run(index, ranges.get(index))));
+      }
+      List<R> results = new ArrayList<>(ranges.size());
+      for (Future<R> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(String.format("scan %s failed", db.getName()), e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Count the keys of the db exactly, one range per cpu.
+   *
+   * @param db db to count
+   * @return number of keys
+   */
+  public static long count(DBInterface db) {
+    List<KeyRange> ranges;
+    try {
+      ranges = splitRanges(db, CPUS);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return ranges.parallelStream().mapToLong(db::count).sum();
+  }
+
+  /**
+   * Parse the level table of rocksdb.levelstats or leveldb.stats,
+   * rows are level, files and size in MB.
+   *
+   * @param stats property value
+   * @return bytes by level
+   */
+  static Map<Integer, Long> parseLevelSizes(String stats) {
+    Map<Integer, Long> sizes = new TreeMap<>();
+    if (stats == null) {
+      return sizes;
+    }
+    for (String line : stats.split("\n")) {
+      String[] columns = line.trim().split("\\s+");
+      if (columns.length < 3 || !columns[0].matches("\\d+")) {
+        continue;
+      }
+      try {
+        sizes.put(Integer.parseInt(columns[0]), (long) (Double.parseDouble(columns[2]) * MB));
+      } catch (NumberFormatException e) {
+        logger.debug("skip stats line: {}", line);
+      }
+    }
+    return sizes;
+  }
+
   private static DbType getDbType(String sourceDir, String dbName) {
     String engineFile = String.format("%s%s%s%s%s", sourceDir, FILE_SEPARATOR,
             dbName, FILE_SEPARATOR, ENGINE_FILE);
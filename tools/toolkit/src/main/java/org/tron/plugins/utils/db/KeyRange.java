@@ -0,0 +1,42 @@
+package org.tron.plugins.utils.db;
+
+import lombok.Getter;
+import org.tron.plugins.utils.ByteArray;
+
+/**
+ * A key range [start, end) in bytewise order, null start means from the first key,
+ * null end means to the last key.
+ */
+@Getter
+public class KeyRange {
+
+  public static final KeyRange ALL = new KeyRange(null, null);
+
+  private final byte[] start;
+  private final byte[] end;
+
+  public KeyRange(byte[] start, byte[] end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Whether the key is before the end of this range.
+   *
+   * @param key key in this db
+   * @return true if the key is not past the end
+   */
+  public boolean isBeforeEnd(byte[] key) {
+    return end == null || ByteArray.compareUnsigned(key, end) < 0;
+  }
+
+  public boolean contains(byte[] key) {
+    return (start == null || ByteArray.compareUnsigned(key, start) >= 0) && isBeforeEnd(key);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[%s, %s)", start == null ? "-" : ByteArray.toHexString(start),
+        end == null ? "-" : ByteArray.toHexString(end));
+  }
+}
@@ -0,0 +1,102 @@
+package org.tron.plugins.utils.db;
+
+import com.google.common.primitives.Longs;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.DBUtils;
+
+/**
+ * Split a db into balanced key ranges.
+ *
+ * <p>Boundaries are chosen on the first 8 key bytes between the first and the last key,
+ * weighted by the engine's approximate sizes when available, otherwise spread evenly,
+ * which fits the hash keyed and big-endian number keyed stores of java-tron.
+ * Every boundary is snapped to an existing key by a seek.
+ */
+final class KeyRangeSplitter {
+
+  private static final int PREFIX_LENGTH = Long.BYTES;
+
+  private KeyRangeSplitter() {
+
+  }
+
+  static List<KeyRange> split(DBInterface db, int parts) throws IOException {
+    // custom comparator, bytewise ranges do not apply
+    if (parts <= 1 || DBUtils.MARKET_PAIR_PRICE_TO_ORDER.equalsIgnoreCase(db.getName())) {
+      return Collections.singletonList(KeyRange.ALL);
+    }
+    try (DBIterator iterator = db.iterator()) {
+      iterator.seekToFirst();
+      if (!iterator.valid()) {
+        return Collections.singletonList(KeyRange.ALL);
+      }
+      byte[] first = iterator.getKey();
+      iterator.seekToLast();
+      byte[] last = iterator.getKey();
+      BigInteger lo = prefix(first);
+      BigInteger hi = prefix(last);
+      if (lo.compareTo(hi) >= 0) {
+        return Collections.singletonList(KeyRange.ALL);
+      }
+      long total = db.getApproximateSize(first, successor(last));
+      List<KeyRange> ranges = new ArrayList<>(parts);
+      byte[] start = null;
+      for (int i = 1; i < parts; i++) {
+        BigInteger point = total > 0
+            ? searchBySize(db, first, lo, hi, total * i / parts)
+            : lo.add(hi.subtract(lo).multiply(BigInteger.valueOf(i))
+                .divide(BigInteger.valueOf(parts)));
+        iterator.seek(toKey(point));
+        if (!iterator.valid()) {
+          break;
+        }
+        byte[] boundary = iterator.getKey();
+        if (ByteArray.compareUnsigned(boundary, first) <= 0
+            || (start != null && ByteArray.compareUnsigned(boundary, start) <= 0)) {
+          continue;
+        }
+        ranges.add(new KeyRange(start, boundary));
+        start = boundary;
+      }
+      ranges.add(new KeyRange(start, null));
+      return ranges;
+    }
+  }
+
+  /**
+   * Binary search the smallest prefix whose approximate size from first reaches the target.
+   */
+  private static BigInteger searchBySize(DBInterface db, byte[] first, BigInteger lo,
+                                         BigInteger hi, long target) {
+    while (lo.compareTo(hi) < 0) {
+      BigInteger mid = lo.add(hi).shiftRight(1);
+      if (db.getApproximateSize(first, toKey(mid)) < target) {
+        lo = mid.add(BigInteger.ONE);
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  private static BigInteger prefix(byte[] key) {
+    byte[] prefix = new byte[PREFIX_LENGTH];
+    System.arraycopy(key, 0, prefix, 0, Math.min(key.length, PREFIX_LENGTH));
+    return new BigInteger(1, prefix);
+  }
+
+  private static byte[] toKey(BigInteger prefix) {
+    return Longs.toByteArray(prefix.longValue());
+  }
+
+  static byte[] successor(byte[] key) {
+    byte[] next = new byte[key.length + 1];
+    System.arraycopy(key, 0, next, 0, key.length);
+    return next;
+  }
+}
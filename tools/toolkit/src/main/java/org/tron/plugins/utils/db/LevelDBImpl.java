@@ -1,14 +1,21 @@
 package org.tron.plugins.utils.db;
 
-import com.google.common.collect.Streams;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
 import lombok.Getter;
 import org.iq80.leveldb.DB;
+import org.iq80.leveldb.Range;
 import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.WriteBatch;
 
 
 public class LevelDBImpl implements DBInterface {
 
+  private static final String STATS = "leveldb.stats";
+  private static final int SAMPLE = 10_000;
+  private static final int DELETE_BATCH = 10_000;
+
   private DB leveldb;
 
   @Getter
@@ -34,14 +41,152 @@ public class LevelDBImpl implements DBInterface {
     leveldb.delete(key);
   }
 
+  @Override
+  public void updateByBatch(Map<byte[], byte[]> rows) {
+    try (WriteBatch batch = leveldb.createWriteBatch()) {
+      rows.forEach((key, value) -> {
+        if (value == null) {
+          batch.delete(key);
+        } else {
+          batch.put(key, value);
+        }
+      });
+      leveldb.write(batch);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * No range tombstones in leveldb, delete the keys by batches in one pass, which still reads
+   * the values, leveldbjni copies the value of every entry.
+   */
+  @Override
+  public void deleteRange(byte[] start, byte[] end) {
+    KeyRange range = new KeyRange(start, end);
+    try (org.iq80.leveldb.DBIterator iterator =
+             leveldb.iterator(new ReadOptions().fillCache(false))) {
+      if (start == null) {
+        iterator.seekToFirst();
+      } else {
+        iterator.seek(start);
+      }
+      WriteBatch batch = leveldb.createWriteBatch();
+      try {
+        int count = 0;
+        while (iterator.hasNext()) {
+          byte[] key = iterator.next().getKey();
+          if (!range.isBeforeEnd(key)) {
+            break;
+          }
+          batch.delete(key);
+          if (++count % DELETE_BATCH == 0) {
+            leveldb.write(batch);
+            batch.close();
+            batch = leveldb.createWriteBatch();
+          }
+        }
+        leveldb.write(batch);
+      } finally {
+        batch.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Override
   public DBIterator iterator() {
     return new LevelDBIterator(leveldb.iterator(new ReadOptions().fillCache(false)));
   }
 
+  @Override
+  public WritePressure getWritePressure() {
+    // leveldb delays and stops writes by itself, not reported
+    return WritePressure.NONE;
+  }
+
+  @Override
+  public long getApproximateSize(byte[] start, byte[] limit) {
+    return leveldb.getApproximateSizes(new Range(start, limit))[0];
+  }
+
   @Override
   public long size() {
-    return Streams.stream(leveldb.iterator()).count();
+    return DbTool.count(this);
+  }
+
+  @Override
+  public long count(KeyRange range) {
+    // leveldbjni always copies the value of an entry, at least keep the cache clean
+    long count = 0;
+    try (org.iq80.leveldb.DBIterator iterator =
+             leveldb.iterator(new ReadOptions().fillCache(false))) {
+      if (range.getStart() == null) {
+        iterator.seekToFirst();
+      } else {
+        iterator.seek(range.getStart());
+      }
+      while (iterator.hasNext() && range.isBeforeEnd(iterator.next().getKey())) {
+        count++;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return count;
+  }
+
+  /**
+   * Scale the approximate bytes of the whole db by the bytes per key of a head sample.
+   */
+  @Override
+  public long estimatedSize() {
+    try (org.iq80.leveldb.DBIterator iterator =
+             leveldb.iterator(new ReadOptions().fillCache(false))) {
+      iterator.seekToFirst();
+      if (!iterator.hasNext()) {
+        return 0;
+      }
+      byte[] first = iterator.peekNext().getKey();
+      long sampled = 0;
+      long rawBytes = 0;
+      while (sampled < SAMPLE && iterator.hasNext()) {
+        Map.Entry<byte[], byte[]> entry = iterator.next();
+        rawBytes += entry.getKey().length + entry.getValue().length;
+        sampled++;
+      }
+      if (!iterator.hasNext()) {
+        return sampled;
+      }
+      byte[] sampleEnd = iterator.peekNext().getKey();
+      iterator.seekToLast();
+      long total = getApproximateSize(first, KeyRangeSplitter.successor(
+          iterator.peekNext().getKey()));
+      if (total <= 0) {
+        // all in memtable, small enough to count
+        return size();
+      }
+      long sampleBytes = getApproximateSize(first, sampleEnd);
+      if (sampleBytes <= 0) {
+        sampleBytes = rawBytes;
+      }
+      return Math.max(sampled, total * sampled / sampleBytes);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public Map<Integer, Long> getLevelSizes() {
+    return DbTool.parseLevelSizes(leveldb.getProperty(STATS));
+  }
+
+  /**
+   * No native checkpoint in leveldb.
+   */
+  @Override
+  public boolean checkpoint(Path dest) {
+    return false;
   }
 
   @Override
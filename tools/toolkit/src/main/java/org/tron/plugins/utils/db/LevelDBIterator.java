@@ -2,10 +2,13 @@ package org.tron.plugins.utils.db;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 public class LevelDBIterator implements DBIterator {
 
   private final org.iq80.leveldb.DBIterator iterator;
+  // no entry before the target of seekBefore
+  private boolean exhausted;
 
   public LevelDBIterator(org.iq80.leveldb.DBIterator iterator) {
     this.iterator = iterator;
@@ -13,41 +16,66 @@ public class LevelDBIterator implements DBIterator {
 
   @Override
   public boolean valid() {
-    return iterator.hasNext();
+    return hasNext();
   }
 
   @Override
   public void seek(byte[] key) {
+    exhausted = false;
     iterator.seek(key);
   }
 
   @Override
   public void seekToFirst() {
+    exhausted = false;
     iterator.seekToFirst();
   }
 
   @Override
   public void seekToLast() {
+    exhausted = false;
     iterator.seekToLast();
   }
 
+  @Override
+  public void seekBefore(byte[] key) {
+    exhausted = false;
+    iterator.seek(key);
+    if (!iterator.hasNext()) {
+      iterator.seekToLast();
+    } else if (iterator.hasPrev()) {
+      iterator.prev();
+    } else {
+      exhausted = true;
+    }
+  }
+
   @Override
   public boolean hasNext() {
-    return iterator.hasNext();
+    return !exhausted && iterator.hasNext();
   }
 
   @Override
   public byte[] getKey() {
+    if (exhausted) {
+      throw new NoSuchElementException();
+    }
     return iterator.peekNext().getKey();
   }
 
   @Override
   public byte[] getValue() {
+    if (exhausted) {
+      throw new NoSuchElementException();
+    }
     return iterator.peekNext().getValue();
   }
 
   @Override
   public Map.Entry<byte[], byte[]> next() {
+    if (exhausted) {
+      throw new NoSuchElementException();
+    }
     return iterator.next();
   }
 
@@ -0,0 +1,122 @@
+package org.tron.plugins.utils.db;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.tron.plugins.utils.ByteArray;
+
+/**
+ * A {@link DBIterator} bounded by a {@link KeyRange}, reads each entry once.
+ */
+public class RangeIterator implements DBIterator {
+
+  private final DBIterator iterator;
+  private final KeyRange range;
+  private Map.Entry<byte[], byte[]> current;
+  private boolean done;
+
+  public RangeIterator(DBIterator iterator, KeyRange range) {
+    this.iterator = iterator;
+    this.range = range;
+  }
+
+  @Override
+  public boolean valid() {
+    return hasNext();
+  }
+
+  @Override
+  public void seek(byte[] key) {
+    if (range.getStart() != null && ByteArray.compareUnsigned(key, range.getStart()) < 0) {
+      key = range.getStart();
+    }
+    iterator.seek(key);
+    current = null;
+    done = false;
+  }
+
+  @Override
+  public void seekToFirst() {
+    if (range.getStart() == null) {
+      iterator.seekToFirst();
+      current = null;
+      done = false;
+    } else {
+      seek(range.getStart());
+    }
+  }
+
+  @Override
+  public void seekToLast() {
+    if (range.getEnd() == null) {
+      iterator.seekToLast();
+    } else {
+      iterator.seekBefore(range.getEnd());
+    }
+    afterSeekBack();
+  }
+
+  @Override
+  public void seekBefore(byte[] key) {
+    if (range.getEnd() != null && ByteArray.compareUnsigned(key, range.getEnd()) > 0) {
+      key = range.getEnd();
+    }
+    iterator.seekBefore(key);
+    afterSeekBack();
+  }
+
+  private void afterSeekBack() {
+    current = null;
+    // the last key before the bound may be before the start too
+    done = iterator.valid() && range.getStart() != null
+        && ByteArray.compareUnsigned(iterator.getKey(), range.getStart()) < 0;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (current == null && !done) {
+      if (iterator.hasNext()) {
+        Map.Entry<byte[], byte[]> entry = iterator.next();
+        if (range.isBeforeEnd(entry.getKey())) {
+          current = entry;
+        } else {
+          done = true;
+        }
+      } else {
+        done = true;
+      }
+    }
+    return current != null;
+  }
+
+  @Override
+  public byte[] getKey() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.getKey();
+  }
+
+  @Override
+  public byte[] getValue() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.getValue();
+  }
+
+  @Override
+  public Map.Entry<byte[], byte[]> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Map.Entry<byte[], byte[]> entry = current;
+    current = null;
+    return entry;
+  }
+
+  @Override
+  public void close() throws IOException {
+    iterator.close();
+  }
+}
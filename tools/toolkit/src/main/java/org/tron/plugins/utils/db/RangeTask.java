@@ -0,0 +1,20 @@
+package org.tron.plugins.utils.db;
+
+/**
+ * A task on one key range, called from a worker thread.
+ *
+ * @param <R> the result of one range
+ */
+@FunctionalInterface
+public interface RangeTask<R> {
+
+  /**
+   * Run the task on the range.
+   *
+   * @param index the index of the range in the ranges
+   * @param range the key range
+   * @return the result of this range
+   * @throws Exception any error, abort the run
+   */
+  R run(int index, KeyRange range) throws Exception;
+}
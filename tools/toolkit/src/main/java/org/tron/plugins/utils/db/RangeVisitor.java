@@ -0,0 +1,20 @@
+package org.tron.plugins.utils.db;
+
+/**
+ * Visit the entries of one key range, called from a scan worker thread.
+ *
+ * @param <R> the result of one range
+ */
+@FunctionalInterface
+public interface RangeVisitor<R> {
+
+  /**
+   * Visit the range.
+   *
+   * @param range the key range to visit
+   * @param iterator iterator positioned at the first key of the range, bounded by its end
+   * @return the result of this range
+   * @throws Exception any error, abort the scan
+   */
+  R visit(KeyRange range, DBIterator iterator) throws Exception;
+}
@@ -32,6 +32,16 @@ public class RockDBIterator implements DBIterator {
     iterator.seekToLast();
   }
 
+  @Override
+  public void seekBefore(byte[] key) {
+    iterator.seek(key);
+    if (iterator.isValid()) {
+      iterator.prev();
+    } else {
+      iterator.seekToLast();
+    }
+  }
+
   @Override
   public boolean hasNext() {
     return iterator.isValid();
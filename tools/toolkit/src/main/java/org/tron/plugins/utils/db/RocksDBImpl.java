@@ -1,12 +1,33 @@
 package org.tron.plugins.utils.db;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import lombok.Getter;
+import org.rocksdb.Checkpoint;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.Status;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.tron.plugins.utils.ByteArray;
 
 public class RocksDBImpl implements DBInterface {
 
+  private static final String ESTIMATE_NUM_KEYS = "rocksdb.estimate-num-keys";
+  private static final String LEVEL_STATS = "rocksdb.levelstats";
+  private static final String IS_WRITE_STOPPED = "rocksdb.is-write-stopped";
+  private static final String DELAYED_WRITE_RATE = "rocksdb.actual-delayed-write-rate";
+  private static final String PENDING_COMPACTION_BYTES =
+      "rocksdb.estimate-pending-compaction-bytes";
+  private static final String RUNNING_COMPACTIONS = "rocksdb.num-running-compactions";
+  private static final long PENDING_COMPACTION_LIMIT = 32 * 1024 * 1024 * 1024L;
+  private static final int MAX_RETRIES = 10;
+  private static final long MAX_BACKOFF_MILLIS = 1000;
+
   private org.rocksdb.RocksDB rocksDB;
 
   @Getter
@@ -45,21 +66,181 @@ public class RocksDBImpl implements DBInterface {
     }
   }
 
+  /**
+   * https://github.com/facebook/rocksdb/issues/6625, a write may fail transiently
+   * while writes stall, retry it with backoff a bounded number of times.
+   */
+  @Override
+  public void updateByBatch(Map<byte[], byte[]> rows) {
+    try (WriteBatch batch = new WriteBatch();
+         WriteOptions options = new WriteOptions()) {
+      for (Map.Entry<byte[], byte[]> row : rows.entrySet()) {
+        if (row.getValue() == null) {
+          batch.delete(row.getKey());
+        } else {
+          batch.put(row.getKey(), row.getValue());
+        }
+      }
+      long backoff = 1;
+      for (int retry = 0; ; retry++) {
+        try {
+          rocksDB.write(options, batch);
+          return;
+        } catch (RocksDBException e) {
+          if (retry >= MAX_RETRIES || !maybeRetry(e)) {
+            throw e;
+          }
+          TimeUnit.MILLISECONDS.sleep(backoff);
+          backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+      }
+    } catch (RocksDBException e) {
+      throw new RuntimeException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static boolean maybeRetry(RocksDBException e) {
+    boolean retry = false;
+    if (e.getStatus() != null) {
+      retry = e.getStatus().getCode() == Status.Code.TryAgain
+          || e.getStatus().getCode() == Status.Code.Busy
+          || e.getStatus().getCode() == Status.Code.Incomplete;
+    }
+    return retry || (e.getMessage() != null && ("Write stall".equalsIgnoreCase(e.getMessage())
+        || ("Incomplete").equalsIgnoreCase(e.getMessage())));
+  }
+
+  /**
+   * Stopped or delayed writes, or pending compaction piling up while compactions run.
+   * A bulk load db runs no compaction, its pending bytes do not count.
+   */
+  @Override
+  public WritePressure getWritePressure() {
+    try {
+      if (rocksDB.getLongProperty(IS_WRITE_STOPPED) > 0) {
+        return WritePressure.STOP;
+      }
+      if (rocksDB.getLongProperty(DELAYED_WRITE_RATE) > 0
+          || (rocksDB.getLongProperty(PENDING_COMPACTION_BYTES) > PENDING_COMPACTION_LIMIT
+          && rocksDB.getLongProperty(RUNNING_COMPACTIONS) > 0)) {
+        return WritePressure.SLOWDOWN;
+      }
+      return WritePressure.NONE;
+    } catch (RocksDBException e) {
+      return WritePressure.NONE;
+    }
+  }
+
+  /**
+   * One range tombstone, an open end is closed by the last key, deleted by itself.
+   */
+  @Override
+  public void deleteRange(byte[] start, byte[] end) {
+    try {
+      byte[] last = null;
+      if (start == null || end == null) {
+        try (RocksIterator iterator = rocksDB.newIterator()) {
+          if (start == null) {
+            iterator.seekToFirst();
+            if (!iterator.isValid()) {
+              return;
+            }
+            start = iterator.key();
+          }
+          if (end == null) {
+            iterator.seekToLast();
+            if (!iterator.isValid()) {
+              return;
+            }
+            last = iterator.key();
+            end = last;
+          }
+        }
+      }
+      if (ByteArray.compareUnsigned(start, end) < 0) {
+        rocksDB.deleteRange(start, end);
+      }
+      if (last != null && ByteArray.compareUnsigned(start, last) <= 0) {
+        rocksDB.delete(last);
+      }
+    } catch (RocksDBException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   @Override
   public DBIterator iterator() {
     return new RockDBIterator(rocksDB.newIterator(
         new org.rocksdb.ReadOptions().setFillCache(false)));
   }
 
+  @Override
+  public long getApproximateSize(byte[] start, byte[] limit) {
+    // not exposed by this rocksdbjni version
+    return -1;
+  }
+
   @Override
   public long size() {
-    RocksIterator iterator = rocksDB.newIterator();
-    long size = 0;
-    for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
-      size++;
+    return DbTool.count(this);
+  }
+
+  @Override
+  public long count(KeyRange range) {
+    // the upper bound stops the iterator natively, so only the keys are walked, never read
+    try (ReadOptions options = new ReadOptions().setFillCache(false);
+         Slice upper = range.getEnd() == null ? null : new Slice(range.getEnd())) {
+      if (upper != null) {
+        options.setIterateUpperBound(upper);
+      }
+      long count = 0;
+      try (RocksIterator iterator = rocksDB.newIterator(options)) {
+        if (range.getStart() == null) {
+          iterator.seekToFirst();
+        } else {
+          iterator.seek(range.getStart());
+        }
+        for (; iterator.isValid(); iterator.next()) {
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+
+  @Override
+  public long estimatedSize() {
+    try {
+      return rocksDB.getLongProperty(ESTIMATE_NUM_KEYS);
+    } catch (RocksDBException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public Map<Integer, Long> getLevelSizes() {
+    try {
+      return DbTool.parseLevelSizes(rocksDB.getProperty(LEVEL_STATS));
+    } catch (RocksDBException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * The memtable is flushed first, then the table files are hard linked when on the same
+   * file system and the manifest is copied, so the image needs no log replay.
+   */
+  @Override
+  public boolean checkpoint(Path dest) throws IOException {
+    try (Checkpoint checkpoint = Checkpoint.create(rocksDB)) {
+      checkpoint.createCheckpoint(dest.toString());
+      return true;
+    } catch (RocksDBException e) {
+      throw new IOException(e);
     }
-    iterator.close();
-    return size;
   }
 
   @Override
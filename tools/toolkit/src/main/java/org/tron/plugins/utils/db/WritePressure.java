@@ -0,0 +1,19 @@
+package org.tron.plugins.utils.db;
+
+/**
+ * Write pressure reported by an engine, writers pace themselves by it.
+ */
+public enum WritePressure {
+  /**
+   * Writes go at full speed.
+   */
+  NONE,
+  /**
+   * Writes are delayed, or compaction falls behind.
+   */
+  SLOWDOWN,
+  /**
+   * Writes are stopped until compaction catches up.
+   */
+  STOP
+}
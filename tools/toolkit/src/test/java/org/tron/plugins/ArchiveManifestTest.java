@@ -63,6 +63,16 @@ public class ArchiveManifestTest {
     Assert.assertEquals(0, ArchiveManifest.run(args));
   }
 
+  @Test
+  public void testBudget() {
+    // one db at a time, largest manifest first
+    ArchiveManifest.Report report = ArchiveManifest.archive(OUTPUT_DIRECTORY, 0, 80000, 1, 1);
+    Assert.assertEquals(0, report.getFails());
+    Assert.assertEquals(1, report.getArchived());
+    Assert.assertTrue(report.getArchiveOpenMillis() >= 0);
+    Assert.assertTrue(report.getReopenMillis() >= 0);
+  }
+
   @Test
   public void testHelp() {
     String[] args = new String[] {"-h"};
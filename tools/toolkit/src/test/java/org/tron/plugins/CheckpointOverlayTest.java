@@ -0,0 +1,100 @@
+package org.tron.plugins;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.DBUtils;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DBIterator;
+import org.tron.plugins.utils.db.DbTool;
+
+public class CheckpointOverlayTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @After
+  public void destroy() {
+    DbTool.close();
+  }
+
+  @Test
+  public void testOverlay() throws IOException, RocksDBException {
+    String dir = folder.newFolder().toString();
+    DBInterface base = DbTool.getDB(dir, "block-index", DbTool.DbType.LevelDB);
+    DBInterface checkpoint = DbTool.getDB(dir, "checkpoint", DbTool.DbType.RocksDB);
+    for (long i = 0; i < 10; i += 2) {
+      base.put(ByteArray.fromLong(i), ByteArray.fromLong(i));
+    }
+    // modify 2, delete 4, add 5 and 11
+    checkpoint.put(key("block-index", 2), value(DBUtils.Operator.MODIFY, 20));
+    checkpoint.put(key("block-index", 4), new byte[] {DBUtils.Operator.DELETE.getValue()});
+    checkpoint.put(key("block-index", 5), value(DBUtils.Operator.CREATE, 50));
+    checkpoint.put(key("block-index", 11), value(DBUtils.Operator.CREATE, 110));
+    checkpoint.put(key("block", 3), value(DBUtils.Operator.CREATE, 30));
+
+    CheckpointOverlay overlay = CheckpointOverlay.load(checkpoint);
+    Assert.assertArrayEquals(ByteArray.fromLong(20),
+        overlay.get("block-index", base, ByteArray.fromLong(2)));
+    Assert.assertNull(overlay.get("block-index", base, ByteArray.fromLong(4)));
+    Assert.assertArrayEquals(ByteArray.fromLong(6),
+        overlay.get("block-index", base, ByteArray.fromLong(6)));
+    Assert.assertNull(overlay.get("block-index", base, ByteArray.fromLong(3)));
+
+    Assert.assertEquals(listOf(0, 20, 50, 6, 8, 110), scan(overlay, base, null));
+    Assert.assertEquals(listOf(50, 6, 8, 110), scan(overlay, base, ByteArray.fromLong(3)));
+    Assert.assertEquals(listOf(110), scan(overlay, base, ByteArray.fromLong(9)));
+
+    try (DBIterator iterator = overlay.iterator("block-index", base)) {
+      iterator.seekToLast();
+      Assert.assertEquals(110, ByteArray.toLong(iterator.getValue()));
+      iterator.seekBefore(ByteArray.fromLong(11));
+      Assert.assertEquals(8, ByteArray.toLong(iterator.getValue()));
+      // 4 is deleted, the last before 5 is 2
+      iterator.seekBefore(ByteArray.fromLong(5));
+      Assert.assertEquals(20, ByteArray.toLong(iterator.getValue()));
+      iterator.seekBefore(ByteArray.fromLong(0));
+      Assert.assertFalse(iterator.hasNext());
+    }
+  }
+
+  private static List<Long> scan(CheckpointOverlay overlay, DBInterface base, byte[] from)
+      throws IOException {
+    List<Long> values = new ArrayList<>();
+    try (DBIterator iterator = overlay.iterator("block-index", base)) {
+      if (from == null) {
+        iterator.seekToFirst();
+      } else {
+        iterator.seek(from);
+      }
+      iterator.forEachRemaining(e -> values.add(ByteArray.toLong(e.getValue())));
+    }
+    return values;
+  }
+
+  private static List<Long> listOf(long... values) {
+    List<Long> list = new ArrayList<>();
+    for (long value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+
+  private static byte[] key(String db, long key) {
+    byte[] name = db.getBytes();
+    return Bytes.concat(Ints.toByteArray(name.length), name, ByteArray.fromLong(key));
+  }
+
+  private static byte[] value(DBUtils.Operator op, long value) {
+    return Bytes.concat(new byte[] {op.getValue()}, ByteArray.fromLong(value));
+  }
+}
@@ -0,0 +1,70 @@
+package org.tron.plugins;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.DBUtils;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DbTool;
+
+public class CheckpointReplayTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @After
+  public void destroy() {
+    DbTool.close();
+  }
+
+  @Test
+  public void testFoldAndApply() throws IOException, RocksDBException {
+    String cpDir = folder.newFolder().toString();
+    String destDir = folder.newFolder().toString();
+    DBInterface cp1 = DbTool.getDB(cpDir, "cp1", DbTool.DbType.LevelDB);
+    DBInterface cp2 = DbTool.getDB(cpDir, "cp2", DbTool.DbType.RocksDB);
+    DBInterface account = DbTool.getDB(destDir, "account");
+    account.put(ByteArray.fromString("deleted"), ByteArray.fromString("old"));
+
+    cp1.put(key("account", "a"), value(DBUtils.Operator.PUT, "1"));
+    cp1.put(key("account", "deleted"), value(DBUtils.Operator.PUT, "2"));
+    cp1.put(key("account", "empty"), value(DBUtils.Operator.MODIFY, null));
+    cp1.put(key("trans-cache", "t"), value(DBUtils.Operator.PUT, "t"));
+    cp2.put(key("account", "a"), value(DBUtils.Operator.MODIFY, "3"));
+    cp2.put(key("account", "deleted"), value(DBUtils.Operator.DELETE, null));
+    cp2.put(key("accountid", "b"), value(DBUtils.Operator.PUT, "4"));
+
+    CheckpointReplay replay = new CheckpointReplay(Arrays.asList("account", "accountid"));
+    Assert.assertEquals(1, replay.storeOf(key("accountid", "b"), 0));
+    Assert.assertEquals(-1, replay.storeOf(key("trans-cache", "t"), 0));
+    Assert.assertEquals(-1, replay.storeOf(new byte[] {0, 0, 0, 9, 'a'}, -1));
+    replay.fold(Arrays.asList(cp1, cp2));
+    replay.apply(destDir);
+
+    Assert.assertArrayEquals(ByteArray.fromString("3"), account.get(ByteArray.fromString("a")));
+    Assert.assertNull(account.get(ByteArray.fromString("deleted")));
+    Assert.assertArrayEquals(new byte[0], account.get(ByteArray.fromString("empty")));
+    Assert.assertArrayEquals(ByteArray.fromString("4"),
+        DbTool.getDB(destDir, "accountid").get(ByteArray.fromString("b")));
+    Assert.assertFalse(new File(destDir, "trans-cache").exists());
+  }
+
+  private static byte[] key(String db, String key) {
+    byte[] name = db.getBytes();
+    return Bytes.concat(Ints.toByteArray(name.length), name, ByteArray.fromString(key));
+  }
+
+  private static byte[] value(DBUtils.Operator op, String value) {
+    byte[] v = value == null ? new byte[0] : ByteArray.fromString(value);
+    return Bytes.concat(new byte[] {op.getValue()}, v);
+  }
+}
@@ -0,0 +1,79 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.ChainedDigest;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DBIterator;
+import org.tron.plugins.utils.db.DbTool;
+import org.tron.plugins.utils.db.KeyRange;
+import org.tron.plugins.utils.db.RangeIterator;
+
+public class ConvertJournalTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testResume() throws IOException, RocksDBException {
+    File file = ConvertJournal.fileOf(folder.newFolder().toString(), "block");
+    Assert.assertNull(ConvertJournal.load(file, "safe"));
+
+    ConvertJournal journal = ConvertJournal.create(file, "safe", Arrays.asList(
+        new KeyRange(null, ByteArray.fromLong(100)),
+        new KeyRange(ByteArray.fromLong(100), null)));
+    ChainedDigest first = new ChainedDigest();
+    ChainedDigest second = new ChainedDigest();
+    for (long i = 0; i < 100; i++) {
+      first.update(ByteArray.fromLong(i), ByteArray.fromLong(i));
+    }
+    for (long i = 100; i <= 150; i++) {
+      second.update(ByteArray.fromLong(i), ByteArray.fromLong(i));
+    }
+    journal.getRanges().get(0).commit(null, first, true);
+    journal.getRanges().get(1).commit(ByteArray.fromLong(150), second, false);
+    journal.save();
+
+    Assert.assertNull(ConvertJournal.load(file, "sst"));
+    ConvertJournal resumed = ConvertJournal.load(file, "safe");
+    Assert.assertNotNull(resumed);
+    Assert.assertEquals(2, resumed.getRanges().size());
+    ConvertJournal.Range done = resumed.getRanges().get(0);
+    Assert.assertTrue(done.isDone());
+    Assert.assertTrue(done.matches(first));
+    Assert.assertEquals(100, done.getCount());
+    ConvertJournal.Range partial = resumed.getRanges().get(1);
+    Assert.assertFalse(partial.isDone());
+    Assert.assertEquals(51, partial.getCount());
+    // the resumed digest continues the chain
+    ChainedDigest resumedDigest = partial.resumeDigest();
+    resumedDigest.update(ByteArray.fromLong(151), ByteArray.fromLong(151));
+    second.update(ByteArray.fromLong(151), ByteArray.fromLong(151));
+    Assert.assertTrue(resumedDigest.matches(second));
+    KeyRange remaining = partial.remaining();
+    // resume from the last committed key, skipped when read again
+    Assert.assertArrayEquals(ByteArray.fromLong(150), remaining.getStart());
+    Assert.assertNull(remaining.getEnd());
+    String dir = folder.newFolder().toString();
+    try (DBInterface db = DbTool.getDB(dir, "block", DbTool.DbType.LevelDB)) {
+      for (long i = 140; i < 160; i++) {
+        db.put(ByteArray.fromLong(i), ByteArray.fromLong(i));
+      }
+      try (DBIterator iterator = new RangeIterator(db.iterator(), remaining)) {
+        iterator.seekToFirst();
+        partial.skipCommitted(iterator);
+        Assert.assertEquals(151, ByteArray.toLong(iterator.next().getKey()));
+      }
+    }
+
+    resumed.delete();
+    Assert.assertFalse(file.exists());
+  }
+}
@@ -0,0 +1,85 @@
+package org.tron.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DatasetArchiveTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testPackAndUnpack() throws IOException {
+    Path base = folder.newFolder().toPath();
+    Random random = new Random(1);
+    for (String dataset : Arrays.asList("snapshot", "history")) {
+      Path store = Files.createDirectories(base.resolve(dataset).resolve("account"));
+      for (int i = 0; i < 5; i++) {
+        byte[] data = new byte[random.nextInt(5000)];
+        random.nextBytes(data);
+        Files.write(store.resolve(i + ".sst"), data);
+      }
+      Files.write(store.resolve("LOCK"), new byte[0]);
+      Files.write(base.resolve(dataset).resolve("info.properties"), new byte[2048]);
+    }
+
+    // one dataset is unpacked into the dest dir itself
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DatasetArchive.pack(base, Collections.singletonList("snapshot"), out, 3, 1024);
+    Path dest = folder.newFolder().toPath();
+    Assert.assertEquals(Collections.singletonList("snapshot"),
+        DatasetArchive.unpack(new ByteArrayInputStream(out.toByteArray()), dest));
+    for (int i = 0; i < 5; i++) {
+      Assert.assertArrayEquals(Files.readAllBytes(base.resolve("snapshot/account/" + i + ".sst")),
+          Files.readAllBytes(dest.resolve("account/" + i + ".sst")));
+    }
+    Assert.assertEquals(0, Files.size(dest.resolve("account/LOCK")));
+    Assert.assertEquals(2048, Files.size(dest.resolve("info.properties")));
+
+    // several datasets keep their dirs
+    out.reset();
+    DatasetArchive.pack(base, Arrays.asList("snapshot", "history"), out, 2, 4096);
+    dest = folder.newFolder().toPath();
+    DatasetArchive.unpack(new ByteArrayInputStream(out.toByteArray()), dest);
+    Assert.assertArrayEquals(Files.readAllBytes(base.resolve("history/account/3.sst")),
+        Files.readAllBytes(dest.resolve("history/account/3.sst")));
+  }
+
+  @Test
+  public void testBrokenArchive() throws IOException {
+    Path base = folder.newFolder().toPath();
+    Path store = Files.createDirectories(base.resolve("snapshot").resolve("account"));
+    Files.write(store.resolve("1.sst"), new byte[10_000]);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DatasetArchive.pack(base, Collections.singletonList("snapshot"), out, 2, 1024);
+    byte[] archive = out.toByteArray();
+
+    byte[] flipped = archive.clone();
+    // inside the content of 1.sst, after the header entry and two dir entries
+    flipped[4096] ^= 1;
+    try {
+      DatasetArchive.unpack(new ByteArrayInputStream(flipped), folder.newFolder().toPath());
+      Assert.fail("broken chunk not detected");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("1 of 10 chunks mismatch"));
+    }
+
+    byte[] truncated = Arrays.copyOf(archive, archive.length / 2);
+    try {
+      DatasetArchive.unpack(new ByteArrayInputStream(truncated), folder.newFolder().toPath());
+      Assert.fail("truncated archive not detected");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("truncated"));
+    }
+  }
+}
@@ -77,6 +77,14 @@ public class DbArchiveTest {
     Assert.assertEquals(0, cli.execute(args));
   }
 
+  @Test
+  public void testBudget() {
+    String[] args = new String[] {"db", "archive", "-d", OUTPUT_DIRECTORY,
+        "--memory-budget", "64", "--file-budget", "256"};
+    CommandLine cli = new CommandLine(new Toolkit());
+    Assert.assertEquals(0, cli.execute(args));
+  }
+
   @Test
   public void testNotExist() {
     String[] args = new String[] {"db", "archive", "-d",
@@ -22,6 +22,13 @@ public class DbConvertTest extends DbTest {
     Assert.assertEquals(0, cli.execute(args));
   }
 
+  @Test
+  public void testRunWithSst() throws IOException {
+    String[] args = new String[] { "db", "convert",  INPUT_DIRECTORY,
+        temporaryFolder.newFolder().toString(),"--sst" };
+    Assert.assertEquals(0, cli.execute(args));
+  }
+
   @Test
   public void testHelp() {
     String[] args = new String[] {"db", "convert", "-h"};
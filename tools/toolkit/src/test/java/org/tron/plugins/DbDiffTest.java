@@ -0,0 +1,112 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Paths;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.DBUtils;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.LevelDBImpl;
+import picocli.CommandLine;
+
+public class DbDiffTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  CommandLine cli = new CommandLine(new Toolkit());
+
+  private static final String DB = "account";
+
+  @Test
+  public void testDiff() throws IOException {
+    File left = folder.newFolder("left");
+    File right = folder.newFolder("right");
+    try (DBInterface l = open(left); DBInterface r = open(right)) {
+      for (int i = 0; i < 20_000; i++) {
+        l.put(("" + i).getBytes(), (DB + "-" + i).getBytes());
+        r.put(("" + i).getBytes(), (DB + "-" + i).getBytes());
+      }
+      r.delete("5".getBytes());
+      r.put("12345".getBytes(), "changed".getBytes());
+      r.put("extra".getBytes(), "extra".getBytes());
+    }
+
+    StringWriter out = new StringWriter();
+    cli.setOut(new PrintWriter(out));
+    Assert.assertEquals(1, cli.execute("db", "diff", left.toString(), right.toString(),
+        "--db", DB, "-t", "2"));
+    String text = out.toString();
+    Assert.assertTrue(text.contains(DB + " - " + hex("5")));
+    Assert.assertTrue(text.contains(DB + " ~ " + hex("12345")));
+    Assert.assertTrue(text.contains(DB + " + " + hex("extra")));
+    Assert.assertTrue(text.contains("3 keys differ: 1 only in left, 1 only in right, 1 changed"));
+
+    // store dirs, made equal again
+    try (DBInterface r = open(right)) {
+      r.put("5".getBytes(), (DB + "-5").getBytes());
+      r.put("12345".getBytes(), (DB + "-12345").getBytes());
+      r.delete("extra".getBytes());
+    }
+    Assert.assertEquals(0, cli.execute("db", "diff", new File(left, DB).toString(),
+        new File(right, DB).toString()));
+  }
+
+  @Test
+  public void testSameStore() throws IOException {
+    File left = folder.newFolder("left");
+    try (DBInterface l = open(left)) {
+      l.put("1".getBytes(), "1".getBytes());
+    }
+    StringWriter out = new StringWriter();
+    cli.setOut(new PrintWriter(out));
+    Assert.assertEquals(0, cli.execute("db", "diff", new File(left, DB).toString(),
+        new File(left, DB).toString()));
+    Assert.assertEquals(0, cli.execute("db", "diff", left.toString(),
+        new File(left, DB + "/..").toString(), "--db", DB));
+    Assert.assertTrue(out.toString().contains("same store"));
+  }
+
+  @Test
+  public void testSame() throws IOException {
+    File left = folder.newFolder("left");
+    File right = folder.newFolder("right");
+    try (DBInterface l = open(left); DBInterface r = open(right)) {
+      for (int i = 0; i < 100; i++) {
+        l.put(("" + i).getBytes(), (DB + "-" + i).getBytes());
+        r.put(("" + i).getBytes(), (DB + "-" + i).getBytes());
+      }
+    }
+    Assert.assertEquals(0, cli.execute("db", "diff", left.toString(), right.toString(),
+        "--db", DB));
+  }
+
+  @Test
+  public void testHelp() {
+    Assert.assertEquals(0, cli.execute("db", "diff", "-h"));
+  }
+
+  @Test
+  public void testNotExist() throws IOException {
+    File left = folder.newFolder("left");
+    Assert.assertEquals(404, cli.execute("db", "diff", left.toString(),
+        new File(left, "none").toString()));
+    Assert.assertEquals(404, cli.execute("db", "diff", left.toString(), left.toString()));
+    Assert.assertEquals(404, cli.execute("db", "diff", left.toString(), left.toString(),
+        "--db", DB));
+  }
+
+  private static DBInterface open(File parent) throws IOException {
+    return new LevelDBImpl(DBUtils.newLevelDb(Paths.get(parent.toString(), DB)), DB);
+  }
+
+  private static String hex(String key) {
+    return ByteArray.toHexString(key.getBytes());
+  }
+}
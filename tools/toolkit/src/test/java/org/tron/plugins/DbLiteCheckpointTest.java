@@ -0,0 +1,58 @@
+package org.tron.plugins;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.DBUtils;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DbTool;
+import picocli.CommandLine;
+
+public class DbLiteCheckpointTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @After
+  public void destroy() {
+    DbTool.close();
+  }
+
+  @Test
+  public void testSecondBlockInCheckpoint() throws IOException, RocksDBException {
+    String source = folder.newFolder("database").toString();
+    DBInterface blockIndex = DbTool.getDB(source, "block-index", DbTool.DbType.LevelDB);
+    DBInterface checkpoint = DbTool.getDB(source, "tmp", DbTool.DbType.LevelDB);
+    blockIndex.put(ByteArray.fromLong(0), "genesis".getBytes());
+    blockIndex.put(ByteArray.fromLong(3), "block-3".getBytes());
+    // block 1 is not flushed to block-index yet
+    checkpoint.put(Bytes.concat(encode("block-index"), ByteArray.fromLong(1)),
+        Bytes.concat(new byte[] {DBUtils.Operator.CREATE.getValue()}, "block-1".getBytes()));
+    checkpoint.put(Bytes.concat(encode("properties"), "latest_block_header_number".getBytes()),
+        Bytes.concat(new byte[] {DBUtils.Operator.MODIFY.getValue()}, ByteArray.fromLong(3)));
+    DbTool.close();
+
+    CommandLine cli = new CommandLine(new Toolkit());
+    StringWriter err = new StringWriter();
+    cli.setErr(new PrintWriter(err));
+    Assert.assertEquals(1, cli.execute("db", "lite", "-o", "split", "-t", "history",
+        "-fn", source, "-ds", folder.newFolder("dataset").toString()));
+    // a full node from block 1, too short, not taken for a lite one from block 3
+    Assert.assertFalse(err.toString().contains("is not fullNode data"));
+    Assert.assertTrue(err.toString().contains("firstBlock:1"));
+  }
+
+  private static byte[] encode(String db) {
+    byte[] name = db.getBytes();
+    return Bytes.concat(Ints.toByteArray(name.length), name);
+  }
+}
@@ -9,4 +9,9 @@ public class DbLiteRocksDbTest extends DbLiteTest {
   public void testToolsWithRocksDB() throws InterruptedException, IOException {
     testTools("ROCKSDB", 1);
   }
+
+  @Test
+  public void testCombinedSplitWithRocksDB() throws InterruptedException, IOException {
+    testCombinedSplit("ROCKSDB", 2);
+  }
 }
@@ -9,6 +9,7 @@ import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.rules.TemporaryFolder;
 import org.tron.api.WalletGrpc;
@@ -151,6 +152,51 @@ public class DbLiteTest {
     DbLite.reSetRecentBlks();
   }
 
+  void testCombinedSplit(String dbType, int checkpointVersion)
+      throws InterruptedException, IOException {
+    logger.info("combined split, dbType {}, checkpointVersion {}", dbType, checkpointVersion);
+    dbPath = String.format("%s_%s_%d", dbPath, dbType, System.currentTimeMillis());
+    init();
+    final String[] argsForAll =
+        new String[]{"-o", "split", "-t", "all", "--fn-data-path",
+            dbPath + File.separator + databaseDir, "--dataset-path",
+            dbPath};
+    final String[] argsForMerge =
+        new String[]{"-o", "merge", "--fn-data-path", dbPath + File.separator + databaseDir,
+            "--dataset-path", dbPath + File.separator + "history"};
+    Args.getInstance().getStorage().setDbEngine(dbType);
+    Args.getInstance().getStorage().setCheckpointVersion(checkpointVersion);
+    DbLite.setRecentBlks(3);
+    startApp();
+    generateSomeTransactions(18);
+    shutdown();
+    FileUtil.deleteDir(Paths.get(dbPath, databaseDir, "trans-cache").toFile());
+    // generate snapshot and history in one pass
+    Assert.assertEquals(0, cli.execute(argsForAll));
+    Assert.assertTrue(Paths.get(dbPath, "snapshot", "info.properties").toFile().exists());
+    Assert.assertTrue(Paths.get(dbPath, "history", "info.properties").toFile().exists());
+    File database = new File(Paths.get(dbPath, databaseDir).toString());
+    if (!database.renameTo(new File(Paths.get(dbPath, databaseDir + "_bak").toString()))) {
+      throw new RuntimeException(
+              String.format("rename %s to %s failed", database.getPath(),
+                  Paths.get(dbPath, databaseDir)));
+    }
+    File snapshot = new File(Paths.get(dbPath, "snapshot").toString());
+    if (!snapshot.renameTo(new File(Paths.get(dbPath, databaseDir).toString()))) {
+      throw new RuntimeException(
+              String.format("rename snapshot to %s failed",
+                  Paths.get(dbPath, databaseDir)));
+    }
+    startApp();
+    generateSomeTransactions(6);
+    shutdown();
+    cli.execute(argsForMerge);
+    startApp();
+    generateSomeTransactions(6);
+    shutdown();
+    DbLite.reSetRecentBlks();
+  }
+
   private void generateSomeTransactions(int during) {
     during *= 1000; // ms
     int runTime = 0;
@@ -2,7 +2,13 @@ package org.tron.plugins;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Assert;
 import org.junit.Rule;
@@ -64,6 +70,75 @@ public class DbRootTest {
 
   }
 
+  @Test
+  public void testParallel() throws IOException, RocksDBException {
+    File database = Paths.get(folder.newFolder().getPath(), "database").toFile();
+    Assert.assertTrue(database.mkdirs());
+    try (DBInterface normal = DbTool.getDB(database.toString(), NORMAL_DB,
+        DbTool.DbType.LevelDB)) {
+      for (int i = 0; i < 10_000; i++) {
+        normal.put(("" + i).getBytes(), (NORMAL_DB + "-" + i).getBytes());
+      }
+    }
+    StringWriter sequential = new StringWriter();
+    cli.setOut(new PrintWriter(sequential));
+    Assert.assertEquals(0, cli.execute("db", "root", database.toString(), "--db", NORMAL_DB));
+    StringWriter parallel = new StringWriter();
+    cli.setOut(new PrintWriter(parallel));
+    Assert.assertEquals(0, cli.execute("db", "root", database.toString(), "--db", NORMAL_DB,
+        "-t", "4"));
+    Assert.assertTrue(sequential.toString().contains("root: "));
+    Assert.assertEquals(sequential.toString(), parallel.toString());
+  }
+
+  @Test
+  public void testFiles() throws IOException, RocksDBException {
+    File database = Paths.get(folder.newFolder().getPath(), "database").toFile();
+    Assert.assertTrue(database.mkdirs());
+    Path store = Paths.get(database.toString(), NORMAL_DB);
+    try (DBInterface normal = new LevelDBImpl(DBUtils.newLevelDb(store), NORMAL_DB)) {
+      for (int i = 0; i < 10_000; i++) {
+        normal.put(("" + i).getBytes(), (NORMAL_DB + "-" + i).getBytes());
+      }
+    }
+    // reopen, the log is recovered into a table file
+    new LevelDBImpl(DBUtils.newLevelDb(store), NORMAL_DB).close();
+    File table;
+    try (Stream<Path> files = Files.list(store)) {
+      table = files.filter(f -> f.toString().endsWith(".ldb")).findFirst()
+          .orElseThrow(AssertionError::new).toFile();
+    }
+
+    StringWriter first = new StringWriter();
+    cli.setOut(new PrintWriter(first));
+    Assert.assertEquals(0, cli.execute("db", "root", database.toString(), "--db", NORMAL_DB,
+        "--files"));
+    Assert.assertTrue(Paths.get(database.toString(), NORMAL_DB + TableFileHashes.SUFFIX)
+        .toFile().exists());
+    Assert.assertFalse(first.toString().contains("hashed: 0"));
+    StringWriter second = new StringWriter();
+    cli.setOut(new PrintWriter(second));
+    Assert.assertEquals(0, cli.execute("db", "root", database.toString(), "--db", NORMAL_DB,
+        "--files"));
+    Assert.assertTrue(second.toString().contains("hashed: 0"));
+    Assert.assertEquals(first.toString().replaceAll("hashed: \\d+", ""),
+        second.toString().replaceAll("hashed: \\d+", ""));
+
+    // same size and time, only a full rehash finds it
+    long mtime = table.lastModified();
+    try (RandomAccessFile raf = new RandomAccessFile(table, "rw")) {
+      raf.seek(0);
+      int b = raf.read();
+      raf.seek(0);
+      raf.write(b ^ 0xff);
+    }
+    Assert.assertTrue(table.setLastModified(mtime));
+    Assert.assertEquals(0, cli.execute("db", "root", database.toString(), "--db", NORMAL_DB,
+        "--files"));
+    Assert.assertEquals(1, cli.execute("db", "root", database.toString(), "--db", NORMAL_DB,
+        "--files", "--rehash"));
+  }
+
   @Test
   public void testHelp() {
     String[] args = new String[] {"db", "root", "-h"};
@@ -0,0 +1,70 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.db.DBInterface;
+import org.tron.plugins.utils.db.DbTool;
+import org.tron.plugins.utils.db.KeyRange;
+import picocli.CommandLine;
+
+public class DbStatsTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  CommandLine cli = new CommandLine(new Toolkit());
+
+  private static final String LEVEL_DB = "level";
+  private static final String ROCKS_DB = "rocks";
+
+  @Test
+  public void testStats() throws IOException, RocksDBException {
+    File database = Paths.get(folder.newFolder().getPath(), "database").toFile();
+    Assert.assertTrue(database.mkdirs());
+
+    DBInterface level = DbTool.getDB(database.toString(), LEVEL_DB, DbTool.DbType.LevelDB);
+    DBInterface rocks = DbTool.getDB(database.toString(), ROCKS_DB, DbTool.DbType.RocksDB);
+    try {
+      for (long i = 0; i < 1000; i++) {
+        level.put(ByteArray.fromLong(i), ByteArray.fromLong(i));
+        rocks.put(ByteArray.fromLong(i), ByteArray.fromLong(i));
+      }
+      Assert.assertEquals(1000, level.size());
+      Assert.assertEquals(1000, rocks.size());
+      KeyRange range = new KeyRange(ByteArray.fromLong(100), ByteArray.fromLong(200));
+      Assert.assertEquals(100, level.count(range));
+      Assert.assertEquals(100, rocks.count(range));
+      Assert.assertTrue(level.estimatedSize() > 0);
+      Assert.assertTrue(rocks.estimatedSize() > 0);
+    } finally {
+      DbTool.close();
+    }
+
+    String[] args = new String[] {"db", "stats", database.toString()};
+    Assert.assertEquals(0, cli.execute(args));
+    args = new String[] {"db", "stats", database.toString(), "--db", ROCKS_DB, "--exact"};
+    Assert.assertEquals(0, cli.execute(args));
+  }
+
+  @Test
+  public void testHelp() {
+    String[] args = new String[] {"db", "stats", "-h"};
+    Assert.assertEquals(0, cli.execute(args));
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    File database = Paths.get(folder.newFolder().getPath(), "database").toFile();
+    String[] args = new String[] {"db", "stats", database.toString()};
+    Assert.assertEquals(404, cli.execute(args));
+    Assert.assertTrue(database.mkdirs());
+    Assert.assertEquals(404, cli.execute(args));
+  }
+}
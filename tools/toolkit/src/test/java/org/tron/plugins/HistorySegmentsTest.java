@@ -0,0 +1,62 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HistorySegmentsTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testIncremental() throws IOException {
+    String historyDir = folder.newFolder().toString();
+    File file = HistorySegments.fileOf(historyDir);
+    Assert.assertNull(HistorySegments.load(file));
+    Assert.assertFalse(HistorySegments.exists(historyDir));
+
+    HistorySegments manifest = HistorySegments.create(file, 100, "00ff");
+    Assert.assertTrue(HistorySegments.exists(historyDir));
+    Assert.assertEquals(0, manifest.nextBlock());
+    manifest.add(new HistorySegments.Segment(0, 99));
+    manifest.add(new HistorySegments.Segment(100, 199));
+    // the last segment is partial
+    manifest.add(new HistorySegments.Segment(200, 250));
+
+    HistorySegments loaded = HistorySegments.load(file);
+    Assert.assertNotNull(loaded);
+    Assert.assertEquals(100, loaded.getSize());
+    Assert.assertEquals("00ff", loaded.getGenesis());
+    Assert.assertEquals(3, loaded.getSegments().size());
+    Assert.assertEquals(200, loaded.nextBlock());
+    loaded.truncate(loaded.nextBlock());
+    Assert.assertEquals(2, HistorySegments.load(file).getSegments().size());
+    Assert.assertEquals("000000000100-000000000199",
+        loaded.getSegments().get(1).getName());
+  }
+
+  @Test
+  public void testCover() throws IOException {
+    HistorySegments manifest = HistorySegments.create(
+        HistorySegments.fileOf(folder.newFolder().toString()), 100, "00ff");
+    manifest.add(new HistorySegments.Segment(0, 99));
+    manifest.add(new HistorySegments.Segment(100, 199));
+    manifest.add(new HistorySegments.Segment(200, 299));
+    List<HistorySegments.Segment> segments = manifest.cover(150, 249);
+    Assert.assertEquals(2, segments.size());
+    Assert.assertEquals(100, segments.get(0).getFrom());
+    Assert.assertEquals(299, segments.get(1).getTo());
+    Assert.assertEquals(3, manifest.cover(1, 299).size());
+    try {
+      manifest.cover(250, 300);
+      Assert.fail("block 300 is in no segment");
+    } catch (IllegalStateException e) {
+      Assert.assertTrue(e.getMessage().contains("300"));
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package org.tron.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MergeJournalTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testResume() throws IOException {
+    File file = MergeJournal.fileOf(folder.newFolder().toString());
+    Assert.assertNull(MergeJournal.load(file));
+
+    MergeJournal journal = MergeJournal.create(file, "/tmp/history", "bak_1",
+        new DbLite.BlockNumInfo(100, 200, 300));
+    journal.complete(MergeJournal.Step.BACKUP);
+    journal.complete("copy.block");
+
+    MergeJournal resumed = MergeJournal.load(file);
+    Assert.assertNotNull(resumed);
+    Assert.assertEquals("/tmp/history", resumed.getHistoryDir());
+    Assert.assertEquals("bak_1", resumed.getBakDir());
+    Assert.assertEquals(100, resumed.getBlockNumInfo().getSnapshotMinNum());
+    Assert.assertEquals(200, resumed.getBlockNumInfo().getHistoryMaxNum());
+    Assert.assertEquals(300, resumed.getBlockNumInfo().getSnapshotMaxNum());
+    Assert.assertTrue(resumed.isDone(MergeJournal.Step.BACKUP));
+    Assert.assertFalse(resumed.isDone(MergeJournal.Step.COPY));
+    Assert.assertTrue(resumed.isDone("copy.block"));
+    Assert.assertFalse(resumed.isDone("copy.trans"));
+
+    resumed.delete();
+    Assert.assertFalse(file.exists());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testBroken() throws IOException {
+    File file = MergeJournal.fileOf(folder.newFolder().toString());
+    Files.write(file.toPath(), "history=/tmp/history\n".getBytes(StandardCharsets.UTF_8));
+    MergeJournal.load(file);
+  }
+}
@@ -0,0 +1,109 @@
+package org.tron.plugins;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotDeltaTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testDeltaAndPatch() throws IOException {
+    Path base = folder.newFolder("base").toPath();
+    write(base, "account/000001.sst", "unchanged table");
+    write(base, "account/000002.sst", "compacted away");
+    write(base, "account/MANIFEST-000003", "old manifest");
+    write(base, "info.properties", "split_block_num=10");
+    Path target = folder.newFolder("target").toPath();
+    write(target, "account/000001.sst", "unchanged table");
+    write(target, "account/000004.sst", "new table");
+    write(target, "account/MANIFEST-000005", "new manifest");
+    write(target, "info.properties", "split_block_num=20");
+    Files.createDirectories(target.resolve("empty"));
+
+    Path delta = folder.getRoot().toPath().resolve("delta");
+    SnapshotDelta.Stats stats = SnapshotDelta.create(base, target, delta);
+    Assert.assertEquals(1, stats.getKeptFiles());
+    Assert.assertEquals(3, stats.getShippedFiles());
+    Assert.assertFalse(delta.resolve("account/000001.sst").toFile().exists());
+    Assert.assertTrue(delta.resolve("account/000004.sst").toFile().exists());
+
+    Path db = folder.getRoot().toPath().resolve("db");
+    Files.move(base, db);
+    SnapshotDelta.apply(delta, db);
+    Assert.assertEquals(list(target), list(db));
+    Assert.assertEquals("split_block_num=20", new String(
+        Files.readAllBytes(db.resolve("info.properties")), StandardCharsets.UTF_8));
+    Assert.assertFalse(db.resolveSibling("db.patch").toFile().exists());
+    Assert.assertFalse(db.resolveSibling("db.bak").toFile().exists());
+  }
+
+  @Test
+  public void testBaseMismatch() throws IOException {
+    Path base = folder.newFolder("base").toPath();
+    write(base, "account/000001.sst", "unchanged table");
+    Path target = folder.newFolder("target").toPath();
+    write(target, "account/000001.sst", "unchanged table");
+    Path delta = folder.getRoot().toPath().resolve("delta");
+    SnapshotDelta.create(base, target, delta);
+    // the node compacted its copy of the base
+    Files.delete(base.resolve("account/000001.sst"));
+    try {
+      SnapshotDelta.apply(delta, base);
+      Assert.fail("base mismatch");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("000001.sst"));
+    }
+    Assert.assertTrue(base.resolve("account").toFile().exists());
+  }
+
+  @Test
+  public void testSameSizeOtherContent() throws IOException {
+    Path base = folder.newFolder("base").toPath();
+    write(base, "account/000001.sst", "table of base");
+    write(base, "account/000002.sst", "same table");
+    Path target = folder.newFolder("target").toPath();
+    // the same file number and size in another copy
+    write(target, "account/000001.sst", "table of next");
+    write(target, "account/000002.sst", "same table");
+    Path delta = folder.getRoot().toPath().resolve("delta");
+    SnapshotDelta.Stats stats = SnapshotDelta.create(base, target, delta);
+    Assert.assertEquals(1, stats.getKeptFiles());
+    Assert.assertEquals(1, stats.getShippedFiles());
+    Assert.assertTrue(delta.resolve("account/000001.sst").toFile().exists());
+    // the base was replaced by another table of the same size
+    write(base, "account/000002.sst", "diff table");
+    try {
+      SnapshotDelta.apply(delta, base);
+      Assert.fail("base mismatch");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage().contains("000002.sst"));
+    }
+    Assert.assertEquals("diff table", new String(
+        Files.readAllBytes(base.resolve("account/000002.sst")), StandardCharsets.UTF_8));
+    Assert.assertFalse(base.resolveSibling("base.patch").toFile().exists());
+  }
+
+  private static void write(Path dir, String name, String content) throws IOException {
+    Path file = dir.resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<String> list(Path dir) throws IOException {
+    try (Stream<Path> walk = Files.walk(dir)) {
+      return walk.map(p -> dir.relativize(p).toString()).sorted()
+          .collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package org.tron.plugins.comparator;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.AbstractComparator;
+import org.rocksdb.ComparatorOptions;
+import org.rocksdb.DirectSlice;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.rocksdb.util.DirectBytewiseComparator;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.DBUtils;
+import org.tron.plugins.utils.MarketUtils;
+
+@Slf4j
+public class MarketOrderPriceComparatorTest {
+
+  private static final int ORDERS = 200_000;
+  private static final long SEED = 20240501L;
+  private static final int PAIR_LENGTH = MarketUtils.TOKEN_ID_LENGTH * 2;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final Random random = new Random(SEED);
+
+  @Test
+  public void testCompare() {
+    for (int i = 0; i < 100_000; i++) {
+      byte[] a = randomKey(i % 10 == 0);
+      byte[] b = i % 7 == 0 ? a.clone() : randomKey(i % 10 == 0);
+      int expected = Integer.signum(reference(a, b));
+      Assert.assertEquals(expected, Integer.signum(MarketUtils.comparePriceKey(a, b)));
+    }
+  }
+
+  /**
+   * Regression benchmark, fill the same synthetic order book and compact it with the
+   * comparator as it was, copying both keys out of the slices, and as it is.
+   */
+  @Test
+  public void testCompaction() throws RocksDBException, IOException {
+    try (ComparatorOptions copt = new ComparatorOptions()) {
+      List<byte[]> baselineKeys = new ArrayList<>();
+      long baseline = fillAndCompact(new CopyingComparator(copt), baselineKeys);
+      List<byte[]> keys = new ArrayList<>();
+      long current = fillAndCompact(new MarketOrderPriceComparatorForRockDB(copt), keys);
+      logger.info("compact {} orders, copying comparator {} ms, {} orders/s,"
+              + " in place comparator {} ms, {} orders/s", ORDERS, baseline,
+          ORDERS * 1000L / baseline, current, ORDERS * 1000L / current);
+
+      Assert.assertEquals(baselineKeys.size(), keys.size());
+      for (int i = 0; i < keys.size(); i++) {
+        Assert.assertArrayEquals(baselineKeys.get(i), keys.get(i));
+        if (i > 0) {
+          Assert.assertTrue(reference(keys.get(i - 1), keys.get(i)) < 0);
+        }
+      }
+      // far below the copying comparator in practice, generous for noisy machines
+      Assert.assertTrue(String.format("in place %d ms, copying %d ms", current, baseline),
+          current <= baseline * 2);
+    }
+  }
+
+  private long fillAndCompact(AbstractComparator<DirectSlice> comparator, List<byte[]> keys)
+      throws RocksDBException, IOException {
+    random.setSeed(SEED);
+    String path = Paths.get(folder.newFolder().toString(), DBUtils.MARKET_PAIR_PRICE_TO_ORDER)
+        .toString();
+    try (Options options = new Options().setCreateIfMissing(true).setComparator(comparator);
+         RocksDB db = RocksDB.open(options, path)) {
+      try (WriteOptions writeOptions = new WriteOptions()) {
+        for (int i = 0; i < ORDERS; i += 1000) {
+          try (WriteBatch batch = new WriteBatch()) {
+            for (int j = 0; j < 1000; j++) {
+              batch.put(randomKey(false), ByteArray.fromInt(i + j));
+            }
+            db.write(writeOptions, batch);
+          }
+        }
+      }
+      long start = System.nanoTime();
+      db.compactRange();
+      long cost = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+      try (RocksIterator iterator = db.newIterator()) {
+        for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+          keys.add(iterator.key());
+        }
+      }
+      return cost;
+    } finally {
+      comparator.close();
+    }
+  }
+
+  private byte[] randomKey(boolean huge) {
+    byte[] sell = ByteArray.fromString(String.valueOf(1_000_000 + random.nextInt(8)));
+    byte[] buy = ByteArray.fromString(String.valueOf(1_000_000 + random.nextInt(8)));
+    long sellQuantity = huge ? random.nextLong() & Long.MAX_VALUE : random.nextInt(10_000);
+    long buyQuantity = huge ? random.nextLong() & Long.MAX_VALUE : random.nextInt(10_000);
+    return MarketUtils.createPairPriceKey(sell, buy, sellQuantity, buyQuantity);
+  }
+
+  /**
+   * The RocksDB comparator as it was, both keys copied out of the slices byte by byte.
+   */
+  private static class CopyingComparator extends DirectBytewiseComparator {
+
+    private CopyingComparator(ComparatorOptions copt) {
+      super(copt);
+    }
+
+    @Override
+    public String name() {
+      return "MarketOrderPriceComparator";
+    }
+
+    @Override
+    public int compare(DirectSlice a, DirectSlice b) {
+      return MarketUtils.comparePriceKey(convertDataToBytes(a), convertDataToBytes(b));
+    }
+
+    private static byte[] convertDataToBytes(DirectSlice directSlice) {
+      int capacity = directSlice.data().capacity();
+      byte[] bytes = new byte[capacity];
+      for (int i = 0; i < capacity; i++) {
+        bytes[i] = directSlice.get(i);
+      }
+      return bytes;
+    }
+  }
+
+  /**
+   * The comparison by copies and BigInteger, as it was.
+   */
+  private static int reference(byte[] o1, byte[] o2) {
+    byte[] pair1 = new byte[PAIR_LENGTH];
+    byte[] pair2 = new byte[PAIR_LENGTH];
+    System.arraycopy(o1, 0, pair1, 0, PAIR_LENGTH);
+    System.arraycopy(o2, 0, pair2, 0, PAIR_LENGTH);
+    int pairResult = ByteArray.compareUnsigned(pair1, pair2);
+    if (pairResult != 0) {
+      return pairResult;
+    }
+    long sell1 = quantity(o1, PAIR_LENGTH);
+    long buy1 = quantity(o1, PAIR_LENGTH + 8);
+    long sell2 = quantity(o2, PAIR_LENGTH);
+    long buy2 = quantity(o2, PAIR_LENGTH + 8);
+    boolean empty1 = sell1 == 0 || buy1 == 0;
+    boolean empty2 = sell2 == 0 || buy2 == 0;
+    if (empty1 || empty2) {
+      return empty1 && empty2 ? 0 : (empty1 ? -1 : 1);
+    }
+    return BigInteger.valueOf(buy1).multiply(BigInteger.valueOf(sell2))
+        .compareTo(BigInteger.valueOf(buy2).multiply(BigInteger.valueOf(sell1)));
+  }
+
+  private static long quantity(byte[] key, int offset) {
+    byte[] bytes = new byte[8];
+    System.arraycopy(key, offset, bytes, 0, 8);
+    return ByteArray.toLong(bytes);
+  }
+}
@@ -0,0 +1,31 @@
+package org.tron.plugins.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChainedDigestTest {
+
+  @Test
+  public void testOrderSensitive() {
+    ChainedDigest a = new ChainedDigest();
+    a.update(ByteArray.fromLong(1), ByteArray.fromLong(2));
+    a.update(ByteArray.fromLong(3), ByteArray.fromLong(4));
+    ChainedDigest b = new ChainedDigest();
+    b.update(ByteArray.fromLong(3), ByteArray.fromLong(4));
+    b.update(ByteArray.fromLong(1), ByteArray.fromLong(2));
+    Assert.assertEquals(2, b.getCount());
+    Assert.assertFalse(a.matches(b));
+
+    // the same bytes split differently between key and value
+    ChainedDigest c = new ChainedDigest();
+    c.update(new byte[] {1, 2}, new byte[] {3});
+    ChainedDigest d = new ChainedDigest();
+    d.update(new byte[] {1}, new byte[] {2, 3});
+    Assert.assertFalse(c.matches(d));
+
+    ChainedDigest e = new ChainedDigest(new byte[Sha256Hash.LENGTH], 0);
+    e.update(ByteArray.fromLong(1), ByteArray.fromLong(2));
+    e.update(ByteArray.fromLong(3), ByteArray.fromLong(4));
+    Assert.assertTrue(a.matches(e));
+  }
+}
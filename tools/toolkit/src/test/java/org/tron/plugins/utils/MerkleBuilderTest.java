@@ -0,0 +1,81 @@
+package org.tron.plugins.utils;
+
+import com.google.common.primitives.Bytes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MerkleBuilderTest {
+
+  @Test
+  public void testSameRoot() {
+    Random random = new Random(7);
+    for (int n = 0; n <= 130; n++) {
+      List<Sha256Hash> leaves = new ArrayList<>();
+      MerkleBuilder builder = new MerkleBuilder();
+      for (int i = 0; i < n; i++) {
+        byte[] key = new byte[random.nextInt(16) + 1];
+        byte[] value = new byte[random.nextInt(64)];
+        random.nextBytes(key);
+        random.nextBytes(value);
+        leaves.add(Sha256Hash.of(true, Bytes.concat(key, value)));
+        builder.add(key, value);
+      }
+      Assert.assertEquals("leaves: " + n, MerkleRoot.root(leaves), builder.root());
+      Assert.assertEquals(n, builder.getCount());
+    }
+  }
+
+  @Test
+  public void testLeafHashes() {
+    List<Sha256Hash> leaves = new ArrayList<>();
+    MerkleBuilder builder = new MerkleBuilder();
+    for (int i = 0; i < 1000; i++) {
+      Sha256Hash leaf = Sha256Hash.of(true, ByteArray.fromInt(i));
+      leaves.add(leaf);
+      builder.add(leaf.getBytes());
+    }
+    Assert.assertEquals(MerkleRoot.root(leaves), builder.root());
+    // the root does not end the stream
+    builder.add(leaves.get(0).getBytes());
+    leaves.add(leaves.get(0));
+    Assert.assertEquals(MerkleRoot.root(leaves), builder.root());
+  }
+
+  @Test
+  public void testAppendRanges() {
+    Random random = new Random(11);
+    for (int n = 0; n <= 300; n += 7) {
+      List<Sha256Hash> leaves = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        leaves.add(Sha256Hash.of(true, ByteArray.fromInt(i)));
+      }
+      // cut the leaves into ranges at random, unaligned
+      List<Integer> cuts = new ArrayList<>();
+      cuts.add(0);
+      for (int i = 0; i < 5; i++) {
+        cuts.add(random.nextInt(n + 1));
+      }
+      cuts.add(n);
+      cuts.sort(Integer::compare);
+      MerkleBuilder root = new MerkleBuilder();
+      for (int c = 0; c + 1 < cuts.size(); c++) {
+        MerkleBuilder range = new MerkleBuilder(cuts.get(c));
+        for (int i = cuts.get(c); i < cuts.get(c + 1); i++) {
+          range.add(leaves.get(i).getBytes());
+        }
+        root.append(range);
+      }
+      Assert.assertEquals("leaves: " + n, MerkleRoot.root(leaves), root.root());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAppendGap() {
+    MerkleBuilder root = new MerkleBuilder();
+    root.add(Sha256Hash.ZERO_HASH.getBytes());
+    root.append(new MerkleBuilder(2));
+  }
+}
@@ -0,0 +1,60 @@
+package org.tron.plugins.utils.db;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+
+public class BatchWriterTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testLevelDb() throws IOException, RocksDBException {
+    testBatch(DbTool.DbType.LevelDB);
+  }
+
+  @Test
+  public void testRocksDb() throws IOException, RocksDBException {
+    testBatch(DbTool.DbType.RocksDB);
+  }
+
+  private void testBatch(DbTool.DbType type) throws IOException, RocksDBException {
+    File dir = folder.newFolder();
+    DBInterface db = DbTool.getDB(dir.toString(), "batch", type);
+    try {
+      db.put(ByteArray.fromLong(-1), ByteArray.fromLong(-1));
+      try (BatchWriter writer = new BatchWriter(db, 10, 1024)) {
+        for (long i = 0; i < 25; i++) {
+          writer.put(ByteArray.fromLong(i), ByteArray.fromLong(i));
+        }
+        // auto flushed twice by count
+        Assert.assertEquals(20, writer.getWritten());
+        Assert.assertNull(db.get(ByteArray.fromLong(24)));
+        writer.delete(ByteArray.fromLong(-1));
+        writer.delete(ByteArray.fromLong(0));
+        writer.put(ByteArray.fromLong(0), new byte[0]);
+        // reads its own writes
+        Assert.assertNull(writer.get(ByteArray.fromLong(-1)));
+        Assert.assertArrayEquals(new byte[0], writer.get(ByteArray.fromLong(0)));
+        Assert.assertArrayEquals(ByteArray.fromLong(24), writer.get(ByteArray.fromLong(24)));
+        Assert.assertArrayEquals(ByteArray.fromLong(1), writer.get(ByteArray.fromLong(1)));
+      }
+      Assert.assertNull(db.get(ByteArray.fromLong(-1)));
+      Assert.assertArrayEquals(new byte[0], db.get(ByteArray.fromLong(0)));
+      Assert.assertArrayEquals(ByteArray.fromLong(24), db.get(ByteArray.fromLong(24)));
+      try (BatchWriter writer = new BatchWriter(db, 1000, 32)) {
+        writer.put(ByteArray.fromLong(100), new byte[32]);
+        // auto flushed by bytes
+        Assert.assertEquals(1, writer.getWritten());
+      }
+    } finally {
+      DbTool.close();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package org.tron.plugins.utils.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+import org.tron.plugins.utils.DBUtils;
+
+public class CopyStoreTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testLevelDb() throws IOException, RocksDBException {
+    testCopyStore(DbTool.DbType.LevelDB, DBUtils.LEVELDB);
+  }
+
+  @Test
+  public void testRocksDb() throws IOException, RocksDBException {
+    testCopyStore(DbTool.DbType.RocksDB, DBUtils.ROCKSDB);
+  }
+
+  private void testCopyStore(DbTool.DbType type, String engine)
+      throws IOException, RocksDBException {
+    String source = folder.newFolder().toString();
+    String dest = Paths.get(folder.getRoot().toString(), "copy").toString();
+    try {
+      DBInterface db = DbTool.getDB(source, "store", type);
+      Files.write(Paths.get(source, "store", DBUtils.FILE_ENGINE),
+          (DBUtils.KEY_ENGINE + "=" + engine).getBytes(StandardCharsets.UTF_8));
+      for (long i = 0; i < 10_000; i++) {
+        db.put(ByteArray.fromLong(i), ByteArray.fromLong(i));
+      }
+      // still open, the rocksdb memtable is only in the checkpoint if flushed
+      DbTool.copyStore(source, dest, "store");
+      // a missing store is skipped
+      DbTool.copyStore(source, dest, "missing");
+      Assert.assertFalse(new File(dest, "missing").exists());
+    } finally {
+      DbTool.close();
+    }
+    Assert.assertTrue(Paths.get(dest, "store", DBUtils.FILE_ENGINE).toFile().exists());
+    try {
+      DBInterface copy = DbTool.getDB(dest, "store");
+      Assert.assertEquals(10_000, copy.size());
+      Assert.assertArrayEquals(ByteArray.fromLong(9_999), copy.get(ByteArray.fromLong(9_999)));
+    } finally {
+      DbTool.close();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package org.tron.plugins.utils.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+
+public class DbToolScanTest {
+
+  private static final int KEYS = 10_000;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testLevelDb() throws IOException, RocksDBException {
+    testScan(DbTool.DbType.LevelDB);
+  }
+
+  @Test
+  public void testRocksDb() throws IOException, RocksDBException {
+    testScan(DbTool.DbType.RocksDB);
+  }
+
+  private void testScan(DbTool.DbType type) throws IOException, RocksDBException {
+    File dir = folder.newFolder();
+    DBInterface db = DbTool.getDB(dir.toString(), "scan", type);
+    try {
+      try (BatchWriter writer = new BatchWriter(db)) {
+        for (long i = 0; i < KEYS; i++) {
+          // spread the keys over the whole prefix space
+          writer.put(ByteArray.fromLong(i * (Long.MAX_VALUE / KEYS)), ByteArray.fromLong(i));
+        }
+      }
+      List<KeyRange> ranges = DbTool.splitRanges(db, 4);
+      Assert.assertTrue(ranges.size() > 1);
+      List<List<Long>> parts = DbTool.scan(db, ranges, 4, (range, iterator) -> {
+        List<Long> values = new ArrayList<>();
+        while (iterator.hasNext()) {
+          Map.Entry<byte[], byte[]> entry = iterator.next();
+          Assert.assertTrue(range.contains(entry.getKey()));
+          values.add(ByteArray.toLong(entry.getValue()));
+        }
+        return values;
+      });
+      // every key is visited once, in key order
+      long expect = 0;
+      for (List<Long> part : parts) {
+        for (long value : part) {
+          Assert.assertEquals(expect++, value);
+        }
+      }
+      Assert.assertEquals(KEYS, expect);
+      // the counts of the ranges, in range order
+      List<Long> counts = DbTool.count(db, ranges, 4);
+      for (int i = 0; i < ranges.size(); i++) {
+        Assert.assertEquals(parts.get(i).size(), counts.get(i).longValue());
+      }
+      // the last key of each range, then past its end
+      for (int i = 0; i < ranges.size(); i++) {
+        try (DBIterator iterator = new RangeIterator(db.iterator(), ranges.get(i))) {
+          iterator.seekToLast();
+          List<Long> part = parts.get(i);
+          Assert.assertEquals(part.get(part.size() - 1).longValue(),
+              ByteArray.toLong(iterator.next().getValue()));
+          Assert.assertFalse(iterator.hasNext());
+        }
+      }
+      byte[] key = ByteArray.fromLong(Long.MAX_VALUE / KEYS);
+      try (DBIterator iterator = new RangeIterator(db.iterator(), new KeyRange(key, key))) {
+        iterator.seekToLast();
+        Assert.assertFalse(iterator.hasNext());
+      }
+      try (DBIterator iterator = db.iterator()) {
+        iterator.seekBefore(key);
+        Assert.assertEquals(0, ByteArray.toLong(iterator.getValue()));
+        iterator.seekBefore(ByteArray.fromLong(0));
+        Assert.assertFalse(iterator.valid());
+      }
+    } finally {
+      DbTool.close();
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package org.tron.plugins.utils.db;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+import org.tron.plugins.utils.ByteArray;
+
+public class DeleteRangeTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testLevelDb() throws IOException, RocksDBException {
+    testDeleteRange(DbTool.DbType.LevelDB);
+  }
+
+  @Test
+  public void testRocksDb() throws IOException, RocksDBException {
+    testDeleteRange(DbTool.DbType.RocksDB);
+  }
+
+  private void testDeleteRange(DbTool.DbType type) throws IOException, RocksDBException {
+    File dir = folder.newFolder();
+    DBInterface db = DbTool.getDB(dir.toString(), "range", type);
+    try {
+      for (long i = 0; i < 30_000; i++) {
+        db.put(ByteArray.fromLong(i), ByteArray.fromLong(i));
+      }
+      db.deleteRange(ByteArray.fromLong(100), ByteArray.fromLong(25_000));
+      Assert.assertArrayEquals(ByteArray.fromLong(99), db.get(ByteArray.fromLong(99)));
+      Assert.assertNull(db.get(ByteArray.fromLong(100)));
+      Assert.assertNull(db.get(ByteArray.fromLong(24_999)));
+      Assert.assertArrayEquals(ByteArray.fromLong(25_000), db.get(ByteArray.fromLong(25_000)));
+      Assert.assertEquals(5_100, db.size());
+
+      db.deleteRange(ByteArray.fromLong(29_000), null);
+      Assert.assertNull(db.get(ByteArray.fromLong(29_999)));
+      db.deleteRange(null, ByteArray.fromLong(50));
+      Assert.assertNull(db.get(ByteArray.fromLong(0)));
+      Assert.assertEquals(4_050, db.size());
+
+      db.deleteRange(null, null);
+      Assert.assertEquals(0, db.size());
+    } finally {
+      DbTool.close();
+    }
+  }
+}